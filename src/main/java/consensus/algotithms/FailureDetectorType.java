@@ -0,0 +1,56 @@
+package consensus.algotithms;
+
+import consensus.algotithms.impl.EventuallyPerfectFailureDetectorAbstraction;
+import consensus.algotithms.impl.PhiAccrualFailureDetectorAbstraction;
+import consensus.algotithms.impl.SharedFailureDetectorAbstraction;
+import consensus.module.IConsensusModule;
+import consensus.node.ILivenessService;
+
+/**
+ * The implementations of the eventually perfect failure detector that a system can use
+ */
+public enum FailureDetectorType {
+    /**
+     * The processes that do not reply within a timeout are suspected, and the timeout grows after every false suspicion
+     */
+    FIXED,
+
+    /**
+     * The processes are suspected when their replies are much later than the intervals observed so far (phi accrual)
+     */
+    PHI_ACCRUAL,
+
+    /**
+     * The processes are watched by the liveness service of the node, which heartbeats every peer once for all the
+     * systems of the node (all the nodes of the systems should use it)
+     */
+    SHARED;
+
+    /**
+     * @param consensus:       the consensus system
+     * @param livenessService: the liveness service of the node
+     * @return a new failure detector of this type, for the system
+     */
+    public IAbstractionLayer create(final IConsensusModule consensus, final ILivenessService livenessService) {
+        return switch (this) {
+            case PHI_ACCRUAL -> new PhiAccrualFailureDetectorAbstraction(consensus);
+            case SHARED -> new SharedFailureDetectorAbstraction(consensus, livenessService);
+            default -> new EventuallyPerfectFailureDetectorAbstraction(consensus);
+        };
+    }
+
+    /**
+     * Get the failure detector type by its name (case insensitive, with '-' instead of '_')
+     *
+     * @param name: the name of the type
+     * @return the type with the given name or FIXED if the name is null or unknown
+     */
+    public static FailureDetectorType fromName(final String name) {
+        for (final var type : values()) {
+            if (type.name().replace('_', '-').equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return FIXED;
+    }
+}
@@ -0,0 +1,34 @@
+package consensus.algotithms;
+
+import consensus.Paxos;
+
+import java.util.Set;
+
+/**
+ * An abstraction layer that declares the messages it can handle, so that the consensus system offers it only those
+ * messages instead of every message that appears into the queue
+ */
+public interface IDispatchableAbstractionLayer extends IAbstractionLayer {
+
+    /**
+     * The PL_DELIVER and BEB_DELIVER messages should be declared through their inner message types.
+     * If one of them is returned here, the layer will receive all the messages of that type.
+     *
+     * @return the types of the messages handled by the layer
+     */
+    Set<Paxos.Message.Type> getHandledMessageTypes();
+
+    /**
+     * @return the types of the inner messages of PL_DELIVER that are handled by the layer
+     */
+    default Set<Paxos.Message.Type> getHandledPlDeliverTypes() {
+        return Set.of();
+    }
+
+    /**
+     * @return the types of the inner messages of BEB_DELIVER that are handled by the layer
+     */
+    default Set<Paxos.Message.Type> getHandledBebDeliverTypes() {
+        return Set.of();
+    }
+}
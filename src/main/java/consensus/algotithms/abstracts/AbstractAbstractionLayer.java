@@ -1,9 +1,9 @@
 package consensus.algotithms.abstracts;
 
-import consensus.algotithms.IAbstractionLayer;
+import consensus.algotithms.IDispatchableAbstractionLayer;
 import consensus.module.IConsensusModule;
 
-public abstract class AbstractAbstractionLayer implements IAbstractionLayer {
+public abstract class AbstractAbstractionLayer implements IDispatchableAbstractionLayer {
 
     protected String abstractionId;
     protected final IConsensusModule consensus;
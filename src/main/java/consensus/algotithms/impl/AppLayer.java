@@ -1,18 +1,32 @@
 package consensus.algotithms.impl;
 
 import consensus.Paxos;
+import consensus.algotithms.FailureDetectorType;
 import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
+import consensus.node.ILivenessService;
 import utils.messages.MessagesHelper;
 import utils.messages.SendHelper;
 
+import java.util.Set;
+
 import static consensus.Paxos.AppPropose;
 import static consensus.Paxos.Message;
 
 public class AppLayer extends AbstractAbstractionLayer {
 
-    public AppLayer(final IConsensusModule consensus) {
+    private final FailureDetectorType failureDetectorType;
+    private final ILivenessService livenessService;
+
+    /**
+     * @param failureDetectorType: the failure detector that the system uses
+     * @param livenessService:     the liveness service of the node (used by the shared failure detector)
+     */
+    public AppLayer(final IConsensusModule consensus, final FailureDetectorType failureDetectorType,
+                    final ILivenessService livenessService) {
         super(consensus);
+        this.failureDetectorType = failureDetectorType;
+        this.livenessService = livenessService;
     }
 
     @Override
@@ -20,6 +34,11 @@ public class AppLayer extends AbstractAbstractionLayer {
         //do nothing on init
     }
 
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        return Set.of(Message.Type.APP_PROPOSE, Message.Type.UC_DECIDE);
+    }
+
     @Override
     public boolean onMessage(final Message message) {
         switch (message.getType()) {
@@ -41,7 +60,7 @@ public class AppLayer extends AbstractAbstractionLayer {
         //alter the process list
         consensus.alterProcessList(appPropose.getProcessesList());
         //add layers
-        consensus.pushLayer(new EventuallyPerfectFailureDetectorAbstraction(consensus));
+        consensus.pushLayer(failureDetectorType.create(consensus, livenessService));
         consensus.pushLayer(new BestEffortBroadcastAbstraction(consensus));
         consensus.pushLayer(new PerfectLinkAbstraction(consensus));
         consensus.pushLayer(new EventualLeaderDetectorAbstraction(consensus));
@@ -62,6 +81,8 @@ public class AppLayer extends AbstractAbstractionLayer {
         var appDecideMessage = MessagesHelper.createAppDecideMessage(consensus.getSystemId(), ucDecide);
         //send the message to the hub
         SendHelper.sendMessage(appDecideMessage, consensus.getHubIp(), consensus.getHubPort(), consensus.getNodePort());
+        //the system is closed after the grace period
+        consensus.markDecided();
         return true;
     }
 }
@@ -0,0 +1,100 @@
+package consensus.algotithms.impl;
+
+/**
+ * The recent intervals between the heartbeats of a process, from which the suspicion level (phi) of the process is
+ * estimated: phi is -log10 of the probability that a heartbeat arrives even later than the time passed since the last
+ * one, if the intervals are normally distributed with the mean and the deviation of the window.
+ * So phi = 1 means a 10% chance to be wrong when suspecting the process, phi = 2 means 1%, phi = 3 means 0.1% and so on,
+ * and the time after which a process is suspected follows the intervals that are actually observed (it grows when the
+ * heartbeats are late, and it shrinks again when they are on time).
+ * The intervals are kept into a ring buffer, with their running sums, so recording an interval and computing phi
+ * are O(1).
+ * The other messages of the process also prove that it is alive, so they restart the time counted by phi, but they do
+ * not add intervals (they do not arrive at the rate of the heartbeats).
+ * It is not thread safe.
+ */
+class ArrivalWindow {
+
+    private final long[] intervals;
+    private final double minStdDeviation;
+    private int intervalsCount;
+    private int nextIndex;
+    private double intervalsSum;
+    private double squaredIntervalsSum;
+    private long lastArrivalAt;
+    private long lastHeardAt;
+
+    /**
+     * @param capacity:         the number of intervals kept
+     * @param firstInterval:    the interval that is expected before any heartbeat arrives, in milliseconds
+     * @param minStdDeviation:  the minimum deviation of the intervals, in milliseconds (so that the very regular
+     *                          heartbeats do not make phi jump on a small delay)
+     * @param startedAt:        the moment from which the first heartbeat is expected, in milliseconds
+     */
+    ArrivalWindow(final int capacity, final long firstInterval, final double minStdDeviation, final long startedAt) {
+        this.intervals = new long[capacity];
+        this.minStdDeviation = minStdDeviation;
+        this.lastArrivalAt = startedAt;
+        this.lastHeardAt = startedAt;
+
+        //start from an interval that is expected, with a large deviation, so that the first heartbeats are not missed
+        record(firstInterval - firstInterval / 4);
+        record(firstInterval + firstInterval / 4);
+    }
+
+    /**
+     * Record the arrival of a heartbeat
+     *
+     * @param arrivedAt: the moment of the arrival, in milliseconds
+     */
+    void heartbeat(final long arrivedAt) {
+        record(arrivedAt - lastArrivalAt);
+        lastArrivalAt = arrivedAt;
+        heard(arrivedAt);
+    }
+
+    /**
+     * Record that another message of the process arrived (it restarts the time counted by phi, without adding an
+     * interval)
+     *
+     * @param arrivedAt: the moment of the arrival, in milliseconds
+     */
+    void heard(final long arrivedAt) {
+        lastHeardAt = Math.max(lastHeardAt, arrivedAt);
+    }
+
+    /**
+     * @param now: the current moment, in milliseconds
+     * @return the suspicion level of the process (0 if a message just arrived, and it grows while none arrives)
+     */
+    double phi(final long now) {
+        final var mean = intervalsSum / intervalsCount;
+        final var variance = Math.max(0, squaredIntervalsSum / intervalsCount - mean * mean);
+        final var stdDeviation = Math.max(Math.sqrt(variance), minStdDeviation);
+
+        //the logistic approximation of the normal cumulative distribution
+        final var elapsed = now - lastHeardAt;
+        final var y = (elapsed - mean) / stdDeviation;
+        final var e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return elapsed > mean ? -Math.log10(e / (1.0 + e)) : -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    /**
+     * Put the interval into the window, in place of the oldest one if the window is full
+     *
+     * @param interval: the interval, in milliseconds
+     */
+    private void record(final long interval) {
+        if (intervalsCount == intervals.length) {
+            final var oldest = intervals[nextIndex];
+            intervalsSum -= oldest;
+            squaredIntervalsSum -= (double) oldest * oldest;
+        } else {
+            ++intervalsCount;
+        }
+        intervals[nextIndex] = interval;
+        intervalsSum += interval;
+        squaredIntervalsSum += (double) interval * interval;
+        nextIndex = (nextIndex + 1) % intervals.length;
+    }
+}
@@ -5,6 +5,8 @@ import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
 import utils.messages.MessagesHelper;
 
+import java.util.Set;
+
 import static consensus.Paxos.*;
 
 /**
@@ -24,6 +26,21 @@ public class BestEffortBroadcastAbstraction extends AbstractAbstractionLayer {
         super.abstractionId = "beb";
     }
 
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        return Set.of(Message.Type.BEB_BROADCAST);
+    }
+
+    /**
+     * Only the messages that are broadcast by the upper layers are delivered through beb
+     *
+     * @return the types of the broadcast messages
+     */
+    @Override
+    public Set<Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Message.Type.EP_READ_, Message.Type.EP_WRITE_, Message.Type.EP_DECIDED_, Message.Type.EC_NEW_EPOCH_);
+    }
+
     /**
      * This algorithm listens only for beb broadcast and plDeliver messages
      *
@@ -44,6 +61,7 @@ public class BestEffortBroadcastAbstraction extends AbstractAbstractionLayer {
     /**
      * On the broadcast message we need to broadcast the message to every single existing process
      * (including current process)
+     * All the PL_SEND messages carry the same broadcast message, so pl serializes it only once for all the processes
      *
      * @param bebBroadcast: the broadcast
      * @return true
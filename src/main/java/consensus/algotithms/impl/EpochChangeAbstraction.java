@@ -4,7 +4,8 @@ import consensus.Paxos;
 import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
 import utils.messages.MessagesHelper;
-import utils.processes.ProcessHelper;
+
+import java.util.Set;
 
 /**
  * An epoch change abstraction (leader based) that signals the start of a new epoch when
@@ -28,7 +29,22 @@ public class EpochChangeAbstraction extends AbstractAbstractionLayer {
         abstractionId = "ec";
         lastTs = 0;
         ts = consensus.getCurrentPID().getRank();
-        trusted = ProcessHelper.getMinRankProcess(consensus.getProcessList());
+        trusted = consensus.getProcessRegistry().getMinRankProcess();
+    }
+
+    @Override
+    public Set<Paxos.Message.Type> getHandledMessageTypes() {
+        return Set.of(Paxos.Message.Type.ELD_TRUST);
+    }
+
+    @Override
+    public Set<Paxos.Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Paxos.Message.Type.EC_NACK_);
+    }
+
+    @Override
+    public Set<Paxos.Message.Type> getHandledBebDeliverTypes() {
+        return Set.of(Paxos.Message.Type.EC_NEW_EPOCH_);
     }
 
     /**
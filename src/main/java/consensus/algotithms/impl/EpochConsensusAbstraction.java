@@ -6,9 +6,11 @@ import consensus.module.IConsensusModule;
 import utils.messages.MessagesHelper;
 import utils.values.ValueHelper;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Epoch consensus is a primitive similar to consensus, where the processes propose a value
@@ -31,33 +33,58 @@ import java.util.Map;
  * When aborted, the epoch consensus implementation simply returns its state, consisting of the
  * timestamp/value pair with the written value, and halts. It is important that the instance performs
  * sno further steps.
+ * <p>
+ * The leader keeps at most one STATE and one ACCEPT for every process (by its index into the process list), so a
+ * reply received twice is not counted twice.
  */
 public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
 
     private int ets;
-    private int accepted;
+    private int statesCount;
+    private int acceptedCount;
     private Paxos.Value tmpVal;
     private Paxos.EpState_ state;
+    private boolean proposed;
     private boolean canHandleMessages;
 
-    private final Map<Paxos.ProcessId, Paxos.EpState_> states;
+    private final Paxos.EpState_[] states;
+    private final BitSet accepted;
 
     protected EpochConsensusAbstraction(final IConsensusModule consensus, final int ets, final Paxos.EpState_ epState) {
         super(consensus);
 
         //could not be initialized into the init because it is received as argument into the object constructor
         this.ets = ets;
+        this.abstractionId = MessagesHelper.createEpAbstractionId(ets);
         this.state = epState;
-        this.states = new HashMap<>();
+        this.states = new Paxos.EpState_[consensus.getProcessList().size()];
+        this.accepted = new BitSet(consensus.getProcessList().size());
     }
 
     @Override
     protected void init() {
-        accepted = 0;
+        statesCount = 0;
+        acceptedCount = 0;
+        proposed = false;
         canHandleMessages = true;
         tmpVal = ValueHelper.getUndefinedValue();
     }
 
+    @Override
+    public Set<Paxos.Message.Type> getHandledMessageTypes() {
+        return Set.of(Paxos.Message.Type.EP_PROPOSE, Paxos.Message.Type.EP_ABORT);
+    }
+
+    @Override
+    public Set<Paxos.Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Paxos.Message.Type.EP_STATE_, Paxos.Message.Type.EP_ACCEPT_);
+    }
+
+    @Override
+    public Set<Paxos.Message.Type> getHandledBebDeliverTypes() {
+        return Set.of(Paxos.Message.Type.EP_READ_, Paxos.Message.Type.EP_WRITE_, Paxos.Message.Type.EP_DECIDED_);
+    }
+
     @Override
     public boolean onMessage(final Paxos.Message message) {
         //as long as the abstraction can handle message, than handle the message
@@ -73,7 +100,7 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
             case PL_DELIVER:
                 return onPlDeliver(message.getPlDeliver());
             case EP_ABORT:
-                return onEpAbort(message.getEpAbort());
+                return isFromCurrentEpoch(message) ? onEpAbort(message.getEpAbort()) : isFromPreviousEpoch(message);
         }
 
         return false;
@@ -88,9 +115,10 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
      */
     private boolean onEpPropose(final Paxos.EpPropose epPropose) {
         this.tmpVal = epPropose.getValue();
+        this.proposed = true;
 
         //put the message in queue
-        final var epReadMessage = MessagesHelper.createEpPurposeReadMessage();
+        final var epReadMessage = MessagesHelper.createEpPurposeReadMessage(abstractionId);
         consensus.trigger(epReadMessage);
         return true;
     }
@@ -107,6 +135,10 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
     private boolean onBebDeliver(final Paxos.BebDeliver bebDeliver) {
 
         final var bebMessage = bebDeliver.getMessage();
+        if (!isFromCurrentEpoch(bebMessage)) {
+            return isFromPreviousEpoch(bebMessage);
+        }
+
         switch (bebMessage.getType()) {
             case EP_READ_:
                 return onBebDeliverEpRead(bebDeliver);
@@ -134,7 +166,7 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
 
         //create the epStateMessage
         final var epStateMessage = MessagesHelper
-                .createEpStateMessage(state.getValueTimestamp(), sender, state.getValue());
+                .createEpStateMessage(abstractionId, state.getValueTimestamp(), sender, state.getValue());
 
         //put the message in queue
         consensus.trigger(epStateMessage);
@@ -156,7 +188,7 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
 
         //create an epAccept message
         final var epAcceptMessage = MessagesHelper
-                .createEpAcceptMessage(bebDeliverWrite.getSender());
+                .createEpAcceptMessage(abstractionId, bebDeliverWrite.getSender());
 
         //put the message into queue
         consensus.trigger(epAcceptMessage);
@@ -187,6 +219,8 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
      * based on its type, the correct action that needs to be done
      * <p>
      * The message type can be either the EP_STATE or EP_ACCEPT
+     * Only the leader of the epoch (the process that ep-proposed) collects them, so the replies sent to the leader of
+     * a previous epoch are consumed without being counted
      *
      * @param plDeliver: the plDeliver message
      * @return true if the message can be handled or false otherwise
@@ -194,11 +228,15 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
     private boolean onPlDeliver(final Paxos.PlDeliver plDeliver) {
 
         final var plMessage = plDeliver.getMessage();
+        if (!isFromCurrentEpoch(plMessage)) {
+            return isFromPreviousEpoch(plMessage);
+        }
+
         switch (plMessage.getType()) {
             case EP_STATE_:
-                return onPlDeliverState(plDeliver);
+                return !proposed || onPlDeliverState(plDeliver);
             case EP_ACCEPT_:
-                return onPlDeliverAccept(plDeliver);
+                return !proposed || onPlDeliverAccept(plDeliver);
         }
         return false;
     }
@@ -217,14 +255,20 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
         //get the epState message
         final var epStateMessage = plDeliver.getMessage().getEpState();
 
-        //create a state from the received timestamp and the received value, and store it into the quorum state map
-        final var state = createState(epStateMessage.getValueTimestamp(), epStateMessage.getValue());
+        //the states of the processes that are not into the process list are not counted
+        final var senderIndex = consensus.getProcessIndex(plDeliver.getSender());
+        if (senderIndex < 0) {
+            return true;
+        }
 
-        //put the state into the quorum state map
-        states.put(plDeliver.getSender(), state);
+        //create a state from the received timestamp and the received value, and store it into the quorum states
+        if (states[senderIndex] == null) {
+            ++statesCount;
+        }
+        states[senderIndex] = createState(epStateMessage.getValueTimestamp(), epStateMessage.getValue());
 
         //check if the majority of processes has decided something, and if not break the execution
-        if (states.size() <= consensus.getProcessList().size() / 2) {
+        if (statesCount <= states.length / 2) {
             return true;
         }
 
@@ -238,18 +282,27 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
      * The leader now ep-decides the chosen value and announces this in a DECIDED message to all processes;
      * the processes that receive this ep-decide as well.
      */
-    private boolean onPlDeliverAccept(final Paxos.PlDeliver ignored) {
-        ++accepted;
+    private boolean onPlDeliverAccept(final Paxos.PlDeliver plDeliver) {
+        //every process is counted once (the processes that are not into the process list are not counted)
+        final var senderIndex = consensus.getProcessIndex(plDeliver.getSender());
+        if (senderIndex < 0) {
+            return true;
+        }
+        if (!accepted.get(senderIndex)) {
+            accepted.set(senderIndex);
+            ++acceptedCount;
+        }
 
         //if the value is less than half the processes then do nothing
-        if (accepted <= consensus.getProcessList().size() / 2) {
+        if (acceptedCount <= states.length / 2) {
             return true;
         }
 
-        accepted = 0;
+        accepted.clear();
+        acceptedCount = 0;
 
         //create a epDecidedMessage
-        final var createEpDecidedMessage = MessagesHelper.createEpDecidedMessage(ValueHelper.makeCopy(tmpVal));
+        final var createEpDecidedMessage = MessagesHelper.createEpDecidedMessage(abstractionId, ValueHelper.makeCopy(tmpVal));
 
         //push the message into queue
         consensus.trigger(createEpDecidedMessage);
@@ -260,9 +313,12 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
     @SuppressWarnings("OptionalGetWithoutIsPresent")
     private void executeOnMoreThanHalf() {
         //get the highest state (based on the timestamp)
-        final var highestState = states.values()
-                .stream()
-                .max(Comparator.comparingInt(Paxos.EpState_::getValueTimestamp))
+        //the values written in the first epoch have the same timestamp (0) as the initial undefined values, so on equal
+        //timestamps the defined value wins
+        final var highestState = Arrays.stream(states)
+                .filter(Objects::nonNull)
+                .max(Comparator.comparingInt(Paxos.EpState_::getValueTimestamp)
+                        .thenComparing(epState -> epState.getValue().getDefined()))
                 .get();
 
         //check if the highest state is defined
@@ -270,10 +326,11 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
             this.tmpVal = highestState.getValue();
         }
 
-        states.clear();
+        Arrays.fill(states, null);
+        statesCount = 0;
 
         //create a new EpWrite message
-        final var epWriteMessage = MessagesHelper.createEpWriteMessage(ValueHelper.makeCopy(tmpVal));
+        final var epWriteMessage = MessagesHelper.createEpWriteMessage(abstractionId, ValueHelper.makeCopy(tmpVal));
         consensus.trigger(epWriteMessage);
     }
     //endregion
@@ -299,6 +356,33 @@ public class EpochConsensusAbstraction extends AbstractAbstractionLayer {
         return true;
     }
 
+    /**
+     * @param message: the message exchanged between the epoch consensus instances
+     * @return true if the message was sent by the instance of the same epoch (or it is not tagged with an epoch)
+     */
+    private boolean isFromCurrentEpoch(final Paxos.Message message) {
+        return getEpochTimestamp(message) == ets;
+    }
+
+    /**
+     * The messages of the previous epochs are consumed without being handled, because their instances are aborted.
+     * The messages of the next epochs are left into the queue, until the instance of that epoch starts.
+     *
+     * @param message: the message exchanged between the epoch consensus instances
+     * @return true if the message was sent by the instance of a previous epoch
+     */
+    private boolean isFromPreviousEpoch(final Paxos.Message message) {
+        return getEpochTimestamp(message) < ets;
+    }
+
+    /**
+     * @param message: the message
+     * @return the epoch timestamp or the current timestamp if the message is not tagged with an epoch
+     */
+    private int getEpochTimestamp(final Paxos.Message message) {
+        return MessagesHelper.getEpochTimestamp(message).orElse(ets);
+    }
+
     /**
      * Create a state with the given timestamp and the given value
      *
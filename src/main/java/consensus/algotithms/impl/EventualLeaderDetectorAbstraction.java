@@ -5,10 +5,8 @@ import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
 import utils.messages.MessagesHelper;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.BitSet;
+import java.util.Set;
 
 import static consensus.Paxos.Message;
 import static consensus.Paxos.ProcessId;
@@ -25,10 +23,13 @@ import static consensus.Paxos.ProcessId;
  * The algorithm maintains the set of processes that are suspected and declares the nonsuspected
  * process with the highest rank to be the leader. Eventually, and provided at least one
  * process is correct, the same correct process will be trusted by all correct processes.
+ * <p>
+ * The suspected processes are kept as a bitset of the process ids, and the leader is found by walking the processes
+ * in the order of their ranks (precomputed by the process registry) until the first one that is not suspected.
  */
 public class EventualLeaderDetectorAbstraction extends AbstractAbstractionLayer {
 
-    private List<ProcessId> suspected;
+    private BitSet suspected;
     private ProcessId leader;
 
     public EventualLeaderDetectorAbstraction(final IConsensusModule consensus) {
@@ -37,11 +38,16 @@ public class EventualLeaderDetectorAbstraction extends AbstractAbstractionLayer
 
     @Override
     protected void init() {
-        this.suspected = new ArrayList<>();
+        this.suspected = new BitSet(consensus.getProcessRegistry().size());
         this.leader = null;
         updateLeader();
     }
 
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        return Set.of(Message.Type.EPFD_SUSPECT, Message.Type.EPFD_RESTORE);
+    }
+
     @Override
     public boolean onMessage(final Message message) {
         switch (message.getType()) {
@@ -62,11 +68,11 @@ public class EventualLeaderDetectorAbstraction extends AbstractAbstractionLayer
      * @return true
      */
     private boolean onEpfdSuspect(final Paxos.EpfdSuspect epfdSuspect) {
-        //get the suspected process
-        final var suspectedProcess = epfdSuspect.getProcess();
-        //if the suspected process is not already into the list
-        if (suspected.stream().noneMatch(processId -> suspectedProcess.getPort() != processId.getPort())) {
-            suspected.add(epfdSuspect.getProcess());
+        //get the id of the suspected process (the processes that are not into the process list are ignored)
+        final var suspectedId = consensus.getProcessIndex(epfdSuspect.getProcess());
+        //if the suspected process is not already suspected
+        if (suspectedId >= 0 && !suspected.get(suspectedId)) {
+            suspected.set(suspectedId);
             updateLeader();
         }
         return true;
@@ -81,7 +87,10 @@ public class EventualLeaderDetectorAbstraction extends AbstractAbstractionLayer
      */
     private boolean onEpfdRestore(final Paxos.EpfdRestore epfdRestore) {
         //remove the process from suspected list
-        suspected.removeIf(processId -> epfdRestore.getProcess().getPort() == processId.getPort());
+        final var restoredId = consensus.getProcessIndex(epfdRestore.getProcess());
+        if (restoredId >= 0) {
+            suspected.clear(restoredId);
+        }
         //check update leader
         updateLeader();
         return true;
@@ -92,24 +101,14 @@ public class EventualLeaderDetectorAbstraction extends AbstractAbstractionLayer
      * (by rank) from the processes that are not suspected to be dead
      */
     private void updateLeader() {
-        //get all processes that are not suspected
-        final var difference = new ArrayList<>(consensus.getProcessList())
-                .stream()
-                .filter(node -> suspected
-                        .stream()
-                        .noneMatch(suspected -> suspected.getPort() == node.getPort()))
-                .collect(Collectors.toList());
-
-        //if all the list is empty, then do nothing
-        if (difference.isEmpty()) {
+        //get the new leader, the process with the maximum rank that is not suspected
+        final var maxRankAliveProcess = consensus.getProcessRegistry().getMaxRankProcess(suspected);
+
+        //if all the processes are suspected, then do nothing
+        if (maxRankAliveProcess == null) {
             return;
         }
 
-        //get the new leader
-        final var maxRankAliveProcess = difference
-                .stream()
-                .max(Comparator.comparingInt(Paxos.ProcessId::getRank)).get();
-
         //check if event condition is triggered
         if (!(this.leader == null || this.leader.getRank() != maxRankAliveProcess.getRank())) {
             return;
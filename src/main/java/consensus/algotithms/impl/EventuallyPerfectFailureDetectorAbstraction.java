@@ -3,13 +3,12 @@ package consensus.algotithms.impl;
 import consensus.Paxos;
 import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
+import consensus.module.ITimer;
 import utils.messages.MessagesHelper;
+import utils.processes.ProcessRegistry;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.BitSet;
+import java.util.Set;
 
 import static consensus.Paxos.Message;
 import static consensus.Paxos.ProcessId;
@@ -26,15 +25,34 @@ import static consensus.Paxos.ProcessId;
  * is too short, some processes that did not actually crashed may be suspected, so the timeout
  * should be increased. The bound on the communication delay is not known, but it is sure that
  * it will be one.
+ * <p>
+ * The alive and the suspected processes are kept as bitsets of the process ids (their positions into the process
+ * list), so a timeout costs O(N) for N processes.
+ * <p>
+ * Every message received from a process proves that it is alive, not only its heartbeat replies, so the processes
+ * that exchange other messages with this one (the active processes) are not asked for heartbeats. A request is sent at
+ * the start of a period to the processes that were not active during the last period, and in the middle of the period
+ * to the active ones that were not heard from since its start (so a process that stops sending other messages is
+ * asked, and it has half a period to reply). At the end of the period every process that was not heard from is
+ * suspected, so a crash is still detected within one period, as when every process is asked at the start of every
+ * period (which is what happens to the processes that send only heartbeat replies).
+ * Only the messages received from the network are counted, not the delivered ones, because a delivered message may
+ * have been parked for a long time (until the layer that handles it was started), so it does not prove that its sender
+ * is still alive. The network messages are parked only until the layers of the system are started, which is before
+ * the first timeout.
  */
 public class EventuallyPerfectFailureDetectorAbstraction extends AbstractAbstractionLayer {
     private static final int DELTA = 100;
 
     private int delay = DELTA;
 
-    private List<ProcessId> alive;
-    private List<ProcessId> suspected;
-    private ScheduledExecutorService executorService;
+    private ProcessRegistry processes;
+    private BitSet alive;
+    private BitSet active;
+    private BitSet suspected;
+    private BitSet requested;
+    private boolean isPeriodMiddle;
+    private ITimer timeout;
 
     public EventuallyPerfectFailureDetectorAbstraction(final IConsensusModule consensus) {
         super(consensus);
@@ -43,15 +61,34 @@ public class EventuallyPerfectFailureDetectorAbstraction extends AbstractAbstrac
     @Override
     protected void init() {
         super.abstractionId = "epfd";
-        this.executorService = Executors.newSingleThreadScheduledExecutor();
-        this.alive = new ArrayList<>(consensus.getProcessList());
-        this.suspected = new ArrayList<>();
+        this.processes = consensus.getProcessRegistry();
+        this.active = new BitSet(processes.size());
+        this.suspected = new BitSet(processes.size());
+        this.requested = new BitSet(processes.size());
+
+        //every process is considered alive during the first period, so it is first asked at the start of the second
+        this.alive = new BitSet(processes.size());
+        this.alive.set(0, processes.size());
+        this.isPeriodMiddle = true;
         setTimeout();
     }
 
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        //every message received from the network is a heartbeat of its sender
+        return Set.of(Message.Type.EPFD_TIMEOUT, Message.Type.NETWORK_MESSAGE);
+    }
+
+    @Override
+    public Set<Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Message.Type.EPFD_HEARTBEAT_REQUEST, Message.Type.EPFD_HEARTBEAT_REPLY);
+    }
+
     @Override
     public boolean onMessage(final Message message) {
         switch (message.getType()) {
+            case NETWORK_MESSAGE:
+                return onNetworkMessage(message.getNetworkMessage());
             case PL_DELIVER:
                 return onPlDeliver(message.getPlDeliver());
             case EPFD_TIMEOUT:
@@ -62,10 +99,29 @@ public class EventuallyPerfectFailureDetectorAbstraction extends AbstractAbstrac
     }
 
     /**
-     * Handle the plDeliver message
+     * Mark the sender of the message as alive, and as active unless the message is a heartbeat reply (the message is
+     * left to pl, which delivers it)
+     *
+     * @param networkMessage: the message received from the network
+     * @return false
+     */
+    private boolean onNetworkMessage(final Paxos.NetworkMessage networkMessage) {
+        //the processes that are not into the process list are not tracked
+        final var senderId = processes.indexOf(networkMessage.getSenderListeningPort());
+        if (senderId >= 0) {
+            alive.set(senderId);
+            if (!Message.Type.EPFD_HEARTBEAT_REPLY.equals(networkMessage.getMessage().getType())) {
+                active.set(senderId);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Handle the plDeliver message (only the heartbeats are delivered to this layer)
      *
      * @param plDeliver: the message
-     * @return true
+     * @return true if the message is a heartbeat, false otherwise
      */
     private boolean onPlDeliver(final Paxos.PlDeliver plDeliver) {
         //get the inner message
@@ -76,12 +132,27 @@ public class EventuallyPerfectFailureDetectorAbstraction extends AbstractAbstrac
             case EPFD_HEARTBEAT_REQUEST:
                 return onEpfdHeardBeatRequest(plDeliver.getSender());
             case EPFD_HEARTBEAT_REPLY:
-                return onEpfdHeardBeatReply(plDeliver.getSender());
+                return onEpfdHeartBeatReply(plDeliver.getSender());
         }
 
         return false;
     }
 
+    /**
+     * Mark the process that replied as alive (the replies of the current process are delivered locally, so they are not
+     * received from the network)
+     *
+     * @param sender: the process that replied
+     * @return true
+     */
+    private boolean onEpfdHeartBeatReply(final ProcessId sender) {
+        final var senderId = processes.indexOf(sender);
+        if (senderId >= 0) {
+            alive.set(senderId);
+        }
+        return true;
+    }
+
     /**
      * If the process is alive, send heartbeat reply to the process that created the request
      *
@@ -97,72 +168,84 @@ public class EventuallyPerfectFailureDetectorAbstraction extends AbstractAbstrac
     }
 
     /**
-     * If the process responded, then consider them alive
-     *
-     * @param sender: the sender of the reply message
-     * @return true
+     * The timeout comes twice per period: in the middle of the period the processes that were not heard from yet are
+     * asked for a heartbeat, and at the end of the period the processes are checked
      */
-    private boolean onEpfdHeardBeatReply(final Paxos.ProcessId sender) {
-        //if the process is not already into the list
-        if (alive.stream().noneMatch(processId -> sender.getPort() == processId.getPort())) {
-            alive.add(sender);
+    private void handleEpfdTimeout() {
+        if (isPeriodMiddle) {
+            requestSilentProcesses();
+        } else {
+            endPeriod();
         }
+        isPeriodMiddle = !isPeriodMiddle;
+        setTimeout();
+    }
 
-        return true;
+    /**
+     * Request a heartbeat reply from the processes that were not heard from since the start of the period, and that
+     * were not asked at its start (because they were active during the last period)
+     */
+    private void requestSilentProcesses() {
+        for (var processId = 0; processId < processes.size(); ++processId) {
+            if (!alive.get(processId) && !requested.get(processId)) {
+                requested.set(processId);
+                final var process = processes.getProcess(processId);
+                consensus.trigger(MessagesHelper.createEpfdHeartBeatRequestMessage(abstractionId, process));
+            }
+        }
     }
 
     /**
      * Check if there is any process that was suspected to be not alive and now is alive.
      * If the delay is too small and not all processes managed to respond with a heartbeat reply, then increase it
      * to permit to all the processes that are alive to sent a heartbeat response.
-     * Afterwards request a heartbeat reply from every processId.
+     * Afterwards request a heartbeat reply from every process that was not active during the period.
      */
-    private void handleEpfdTimeout() {
+    private void endPeriod() {
         //check the intersection
-        final var intersects = alive
-                .stream()
-                .anyMatch(aliveProcess -> suspected
-                        .stream()
-                        .anyMatch(suspectedProcess -> suspectedProcess.getPort() == aliveProcess.getPort()));
-
-        delay += intersects ? DELTA : 0;
+        delay += alive.intersects(suspected) ? DELTA : 0;
 
         //iterate through processes
-        consensus.getProcessList().forEach(processId -> {
-
-            //check if the process is alive
-            final var isAlive = alive.stream().anyMatch(aliveProcess -> aliveProcess.getPort() == processId.getPort());
-            //check if the process is suspected
-            final var isSuspected = suspected.stream().anyMatch(suspectedProcess -> suspectedProcess.getPort() == processId.getPort());
-
-            //if the process is not alive and the process is not suspected then add it into the suspected list
-            if(!isAlive && !isSuspected) {
-                this.suspected.add(processId);
-                consensus.trigger(MessagesHelper.createEpfdSuspectMessage(processId));
+        for (var processId = 0; processId < processes.size(); ++processId) {
+            final var process = processes.getProcess(processId);
+            final var isAlive = alive.get(processId);
+            final var isSuspected = suspected.get(processId);
+
+            //if the process was not heard from during the period, and it is not suspected, then suspect it
+            if (!isAlive && !isSuspected) {
+                suspected.set(processId);
+                consensus.trigger(MessagesHelper.createEpfdSuspectMessage(process));
             }
 
             //if the process is alive and suspected remove it from the suspected list
-            if(isAlive && isSuspected) {
-                this.suspected.removeIf(suspected -> suspected.getPort() == processId.getPort());
-                consensus.trigger(MessagesHelper.createEpfdRestoreMessage(processId));
+            if (isAlive && isSuspected) {
+                suspected.clear(processId);
+                consensus.trigger(MessagesHelper.createEpfdRestoreMessage(process));
             }
 
-            consensus.trigger(MessagesHelper.createEpfdHeartBeatRequestMessage(abstractionId, processId));
-
-        });
+            //the processes that were active during the period are asked only if they are silent until its middle
+            final var isActive = active.get(processId);
+            requested.set(processId, !isActive);
+            if (!isActive) {
+                consensus.trigger(MessagesHelper.createEpfdHeartBeatRequestMessage(abstractionId, process));
+            }
+        }
 
         alive.clear();
-        setTimeout();
+        active.clear();
     }
 
     /**
-     * Schedule the delay/timeout in which the heartbeat replies should be received
+     * Schedule the delay/timeout in which the heartbeat replies should be received (half of the delay, since the
+     * timeout comes in the middle and at the end of every period)
+     * The same timer is moved for every timeout, so the timeouts do not allocate a timer each
      */
     private void setTimeout() {
-        //create a epfd message for timeout
-        executorService.schedule(
-                () -> consensus.trigger(MessagesHelper.createEpfdTimeout()),
-                delay,
-                TimeUnit.MILLISECONDS);
+        //create a epfd message for timeout, the first time
+        if (timeout == null) {
+            timeout = consensus.scheduleTimeout(MessagesHelper.createEpfdTimeout(), delay / 2);
+            return;
+        }
+        consensus.rescheduleTimeout(timeout, delay / 2);
     }
 }
@@ -1,14 +1,25 @@
 package consensus.algotithms.impl;
 
+import com.google.protobuf.ByteString;
 import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
+import utils.messages.MessageLane;
+import utils.messages.MessagesHelper;
 import utils.messages.SendHelper;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
 import static consensus.Paxos.Message;
+import static consensus.Paxos.Message.Type.NETWORK_MESSAGE;
 import static consensus.Paxos.Message.Type.PL_SEND;
 
 public class PerfectLinkAbstraction extends AbstractAbstractionLayer {
 
+    //the last message sent in every lane, with its bytes
+    private final Map<MessageLane, SerializedMessage> lastSentMessages = new EnumMap<>(MessageLane.class);
+
     public PerfectLinkAbstraction(final IConsensusModule consensus) {
         super(consensus);
     }
@@ -18,25 +29,110 @@ public class PerfectLinkAbstraction extends AbstractAbstractionLayer {
         //does nothing on init
     }
 
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        return Set.of(PL_SEND, NETWORK_MESSAGE);
+    }
+
     /**
-     * This method handles only the PL_SEND message types
+     * This method handles only the PL_SEND and NETWORK_MESSAGE message types
      * @param message: the message that appeared into queue
      * @return true if the message was handled or false otherwise
      */
     @Override
     public boolean onMessage(Message message) {
-        //if the message type is not PL_SEND than ignore the message
-        if (!PL_SEND.equals(message.getType())) {
-            return false;
+        switch (message.getType()) {
+            case PL_SEND:
+                return onPlSend(message);
+            case NETWORK_MESSAGE:
+                return onNetworkMessage(message);
         }
+        return false;
+    }
 
+    /**
+     * Send the message to its destination
+     * A message sent to the current process is delivered directly, without going through the network
+     * The PL_SEND messages of a broadcast carry the same message instance, and they are queued one after the other in
+     * the same lane, so the bytes of the last message sent in the lane are reused when the next PL_SEND carries it too
+     *
+     * @param message: the PL_SEND message
+     * @return true
+     */
+    private boolean onPlSend(final Message message) {
         //get the destination message
         final var destinationProcess = message.getPlSend().getDestination();
 
-        //send the message through tcp network
-        SendHelper.sendMessage(message, destinationProcess.getHost(), destinationProcess.getPort(), consensus.getNodePort());
+        //if the message is sent to the current process, deliver it as if it was received from the network
+        final var currentProcess = consensus.getCurrentPID();
+        if (destinationProcess.equals(currentProcess)) {
+            consensus.trigger(MessagesHelper
+                    .createPLDeliverMessage(currentProcess, message.getPlSend().getMessage(), message.getAbstractionId()));
+            return true;
+        }
+
+        //send the message through tcp network (it is only queued, so the system never waits for the network)
+        SendHelper.sendMessage(message, serialize(message), destinationProcess.getHost(), destinationProcess.getPort(),
+                consensus.getNodePort());
         return true;
     }
 
+    /**
+     * @param message: the PL_SEND message
+     * @return the bytes of the message that it carries, serialized only if the last message sent in its lane was not
+     * the same instance
+     */
+    private ByteString serialize(final Message message) {
+        final var carriedMessage = message.getPlSend().getMessage();
+        final var lane = MessageLane.of(message);
+
+        final var lastSentMessage = lastSentMessages.get(lane);
+        if (lastSentMessage != null && lastSentMessage.message == carriedMessage) {
+            return lastSentMessage.bytes;
+        }
+
+        final var serializedMessage = new SerializedMessage(carriedMessage, carriedMessage.toByteString());
+        lastSentMessages.put(lane, serializedMessage);
+        return serializedMessage.bytes;
+    }
 
+    /**
+     * Deliver a message received from the network
+     * The message is handled after the process list is known, so that the sender can be identified
+     *
+     * @param message: the message received from the network
+     * @return true
+     */
+    private boolean onNetworkMessage(final Message message) {
+        //get the network message
+        final var networkMessage = message.getNetworkMessage();
+
+        //get the sender process, and if the process is not found, do nothing
+        final var senderProcessOptional = consensus.identifySenderProcessByNetworkMessage(networkMessage);
+        if (senderProcessOptional.isEmpty()) {
+            return true;
+        }
+
+        //create PL_DELIVER message, so that all the abstractions that listen for PL_DELIVER message type to be informed
+        final var plDeliverMessage = MessagesHelper
+                .createPLDeliverMessage(senderProcessOptional.get(), networkMessage.getMessage(), message.getAbstractionId());
+
+        //put the message into queue
+        consensus.trigger(plDeliverMessage);
+        return true;
+    }
+
+    /**
+     * A sent message, and the bytes into which it was serialized
+     */
+    private static final class SerializedMessage {
+
+        private final Message message;
+        private final ByteString bytes;
+
+        private SerializedMessage(final Message message, final ByteString bytes) {
+            this.message = message;
+            this.bytes = bytes;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package consensus.algotithms.impl;
+
+import consensus.Paxos;
+import consensus.algotithms.abstracts.AbstractAbstractionLayer;
+import consensus.module.IConsensusModule;
+import consensus.module.ITimer;
+import utils.messages.MessagesHelper;
+import utils.processes.ProcessRegistry;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static consensus.Paxos.Message;
+import static consensus.Paxos.ProcessId;
+
+/**
+ * An eventually perfect failure-detector abstraction that adapts to the delays that it observes (the phi accrual
+ * failure detector), instead of using a fixed timeout.
+ * Every process is asked for a heartbeat at a fixed interval, and the intervals between its heartbeat replies are kept
+ * into an arrival window. The process is suspected when the suspicion level (phi) computed from the window passes the
+ * threshold, which means that a reply this late is very unlikely if the process is still alive, and it is restored as
+ * soon as one of its replies arrives. When the node is loaded the replies are late and more spread, so the time after
+ * which a process is suspected grows, and when the load passes it shrinks back.
+ * Every message received from the network proves that its sender is alive too, so it restores the sender and restarts
+ * the time counted by phi, but only the heartbeat replies are recorded as intervals.
+ * It triggers the same EPFD_SUSPECT / EPFD_RESTORE messages as the fixed timeout failure detector, so the leader
+ * detector works with both.
+ */
+public class PhiAccrualFailureDetectorAbstraction extends AbstractAbstractionLayer {
+
+    private static final int HEARTBEAT_INTERVAL = 100;
+    private static final int WINDOW_SIZE = 100;
+    private static final double MIN_STD_DEVIATION = 25;
+    private static final double PHI_THRESHOLD = 8;
+
+    private ProcessRegistry processes;
+    private ArrivalWindow[] windows;
+    private BitSet suspected;
+    private ITimer timeout;
+
+    public PhiAccrualFailureDetectorAbstraction(final IConsensusModule consensus) {
+        super(consensus);
+    }
+
+    @Override
+    protected void init() {
+        super.abstractionId = "epfd";
+        this.processes = consensus.getProcessRegistry();
+        this.suspected = new BitSet(processes.size());
+
+        //every process is expected to reply within the first interval
+        final var now = currentMillis();
+        this.windows = new ArrivalWindow[processes.size()];
+        for (var processId = 0; processId < windows.length; ++processId) {
+            windows[processId] = new ArrivalWindow(WINDOW_SIZE, HEARTBEAT_INTERVAL, MIN_STD_DEVIATION, now);
+        }
+
+        this.timeout = consensus.scheduleTimeout(MessagesHelper.createEpfdTimeout(), HEARTBEAT_INTERVAL);
+    }
+
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        //every message received from the network proves that its sender is alive
+        return Set.of(Message.Type.EPFD_TIMEOUT, Message.Type.NETWORK_MESSAGE);
+    }
+
+    @Override
+    public Set<Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Message.Type.EPFD_HEARTBEAT_REQUEST, Message.Type.EPFD_HEARTBEAT_REPLY);
+    }
+
+    @Override
+    public boolean onMessage(final Message message) {
+        switch (message.getType()) {
+            case NETWORK_MESSAGE:
+                return onNetworkMessage(message.getNetworkMessage());
+            case PL_DELIVER:
+                return onPlDeliver(message.getPlDeliver());
+            case EPFD_TIMEOUT:
+                handleEpfdTimeout();
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Mark the sender of the message as alive (the message is left to pl, which delivers it)
+     *
+     * @param networkMessage: the message received from the network
+     * @return false
+     */
+    private boolean onNetworkMessage(final Paxos.NetworkMessage networkMessage) {
+        //the processes that are not into the process list are not tracked
+        final var senderId = processes.indexOf(networkMessage.getSenderListeningPort());
+        if (senderId >= 0) {
+            windows[senderId].heard(currentMillis());
+            restore(senderId);
+        }
+        return false;
+    }
+
+    /**
+     * Handle the plDeliver message
+     *
+     * @param plDeliver: the message
+     * @return true
+     */
+    private boolean onPlDeliver(final Paxos.PlDeliver plDeliver) {
+        switch (plDeliver.getMessage().getType()) {
+            case EPFD_HEARTBEAT_REQUEST:
+                return onEpfdHeartBeatRequest(plDeliver.getSender());
+            case EPFD_HEARTBEAT_REPLY:
+                return onEpfdHeartBeatReply(plDeliver.getSender());
+        }
+        return false;
+    }
+
+    /**
+     * Send a heartbeat reply to the process that created the request
+     *
+     * @param sender: the process that started the request
+     * @return true
+     */
+    private boolean onEpfdHeartBeatRequest(final ProcessId sender) {
+        consensus.trigger(MessagesHelper.createEpfdReply(abstractionId, sender));
+        return true;
+    }
+
+    /**
+     * Record the heartbeat of the process, and restore the process if it was suspected
+     *
+     * @param sender: the sender of the reply message
+     * @return true
+     */
+    private boolean onEpfdHeartBeatReply(final ProcessId sender) {
+        //the processes that are not into the process list are not tracked
+        final var senderId = processes.indexOf(sender);
+        if (senderId < 0) {
+            return true;
+        }
+
+        windows[senderId].heartbeat(currentMillis());
+        restore(senderId);
+        return true;
+    }
+
+    /**
+     * Restore the process if it is suspected
+     *
+     * @param processId: the id of the process that was heard from
+     */
+    private void restore(final int processId) {
+        if (suspected.get(processId)) {
+            suspected.clear(processId);
+            consensus.trigger(MessagesHelper.createEpfdRestoreMessage(processes.getProcess(processId)));
+        }
+    }
+
+    /**
+     * Suspect the processes whose suspicion level passed the threshold, and request a new heartbeat from every process
+     */
+    private void handleEpfdTimeout() {
+        final var now = currentMillis();
+        for (var processId = 0; processId < windows.length; ++processId) {
+            final var process = processes.getProcess(processId);
+            if (!suspected.get(processId) && windows[processId].phi(now) > PHI_THRESHOLD) {
+                suspected.set(processId);
+                consensus.trigger(MessagesHelper.createEpfdSuspectMessage(process));
+            }
+            consensus.trigger(MessagesHelper.createEpfdHeartBeatRequestMessage(abstractionId, process));
+        }
+
+        consensus.rescheduleTimeout(timeout, HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * @return the current moment, in milliseconds (from a monotonic clock)
+     */
+    private static long currentMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,62 @@
+package consensus.algotithms.impl;
+
+import consensus.Paxos;
+import consensus.algotithms.abstracts.AbstractAbstractionLayer;
+import consensus.module.IConsensusModule;
+import consensus.node.ILivenessService;
+import utils.messages.MessagesHelper;
+
+import java.util.Set;
+
+import static consensus.Paxos.Message;
+
+/**
+ * An eventually perfect failure-detector abstraction that does not heartbeat the processes itself, but subscribes to
+ * them at the liveness service of the node, which heartbeats every peer once for all the systems of the node and
+ * triggers the EPFD_SUSPECT / EPFD_RESTORE messages into this system.
+ * It still replies to the heartbeat requests of the systems that run their own failure detector.
+ */
+public class SharedFailureDetectorAbstraction extends AbstractAbstractionLayer {
+
+    private final ILivenessService livenessService;
+
+    /**
+     * @param livenessService: the liveness service of the node
+     */
+    public SharedFailureDetectorAbstraction(final IConsensusModule consensus, final ILivenessService livenessService) {
+        super(consensus);
+        this.livenessService = livenessService;
+
+        //subscribe after the layer is initialized (the system is unsubscribed by its node, when it is closed)
+        consensus.getProcessRegistry().getProcesses().forEach(process -> livenessService.subscribe(process, consensus));
+    }
+
+    @Override
+    protected void init() {
+        super.abstractionId = "epfd";
+    }
+
+    @Override
+    public Set<Message.Type> getHandledMessageTypes() {
+        return Set.of();
+    }
+
+    @Override
+    public Set<Message.Type> getHandledPlDeliverTypes() {
+        return Set.of(Message.Type.EPFD_HEARTBEAT_REQUEST);
+    }
+
+    @Override
+    public boolean onMessage(final Message message) {
+        if (!Message.Type.PL_DELIVER.equals(message.getType())) {
+            return false;
+        }
+
+        final Paxos.PlDeliver plDeliver = message.getPlDeliver();
+        if (!Message.Type.EPFD_HEARTBEAT_REQUEST.equals(plDeliver.getMessage().getType())) {
+            return false;
+        }
+        consensus.trigger(MessagesHelper.createEpfdReply(abstractionId, plDeliver.getSender()));
+        return true;
+    }
+}
@@ -4,11 +4,13 @@ package consensus.algotithms.impl;
 import consensus.Paxos;
 import consensus.algotithms.abstracts.AbstractAbstractionLayer;
 import consensus.module.IConsensusModule;
+import consensus.module.ParkingKey;
 import consensus.module.impl.ConsensusSystemModule;
 import utils.messages.MessagesHelper;
-import utils.processes.ProcessHelper;
 import utils.values.ValueHelper;
 
+import java.util.Set;
+
 /**
  * A uniform consensus algorithm based on a fail-noisy model (Leader driven consensus) that runs
  * through a sequence of epochs. The value that is decided by the consensus algorithm is the value
@@ -36,6 +38,8 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
     private Paxos.ProcessId l;
     private Paxos.ProcessId newl;
 
+    private EpochConsensusAbstraction epoch;
+
     public UniformConsensusAbstraction(final IConsensusModule consensus) {
         super(consensus);
     }
@@ -47,12 +51,17 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
         this.proposed = this.decided = false;
         this.ets = this.newts = 0;
 
-        this.l = ProcessHelper.getMinRankProcess(consensus.getProcessList());
+        this.l = consensus.getProcessRegistry().getMinRankProcess();
         this.newl = null;
 
         startNewEpoch(ets, newts, val);
     }
 
+    @Override
+    public Set<Paxos.Message.Type> getHandledMessageTypes() {
+        return Set.of(Paxos.Message.Type.UC_PROPOSE, Paxos.Message.Type.EC_START_EPOCH, Paxos.Message.Type.EP_ABORTED, Paxos.Message.Type.EP_DECIDE);
+    }
+
     @Override
     public boolean onMessage(final Paxos.Message message) {
 
@@ -95,8 +104,8 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
         newl = ecStartEpoch.getNewLeader();
         newts = ecStartEpoch.getNewTimestamp();
 
-        //create the message
-        final var epAbortMessage = MessagesHelper.createEpAbortMessage();
+        //create the message (addressed to the current epoch, which may be already aborted if several epochs start)
+        final var epAbortMessage = MessagesHelper.createEpAbortMessage(MessagesHelper.createEpAbstractionId(ets));
 
         //put the message into queue
         consensus.trigger(epAbortMessage);
@@ -108,20 +117,32 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
      * Handle the epAborted message
      *
      * @param epAborted: the epAborted message
-     * @return true if the ets == getEts or false otherwise
+     * @return true if the ets == getEts (or the message belongs to a previous epoch) or false otherwise
      */
     private boolean onEpAborted(final Paxos.EpAborted epAborted) {
+        //the messages of the previous epochs will never meet the condition, so they are consumed
+        if (epAborted.getEts() < ets) {
+            return true;
+        }
+
         //check if the event condition is met
         if (ets != epAborted.getEts()) {
             return false;
         }
 
+        //the aborted epoch performs no further steps, so it can be removed
+        consensus.retireLayer(epoch);
+
         //modify the values
         ets = newts;
         l = newl;
         proposed = false;
         startNewEpoch(ets, epAborted.getValueTimestamp(), epAborted.getValue());
 
+        //the messages of the new epoch that arrived earlier can be handled now
+        consensus.wakeParkedMessages(ParkingKey.of(Paxos.Message.Type.EP_ABORTED, ets));
+        consensus.wakeParkedMessages(ParkingKey.of(Paxos.Message.Type.EP_DECIDE, ets));
+
         //check also for the trigger condition
         checkEventTriggerCondition();
         return true;
@@ -131,9 +152,14 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
      * Handle the EpDecide event
      *
      * @param epDecide: the EP_Decide message
-     * @return true if the event condition is met or false otherwise
+     * @return true if the event condition is met (or the message belongs to a previous epoch) or false otherwise
      */
     private boolean onEpDecide(final Paxos.EpDecide epDecide) {
+        //the messages of the previous epochs will never meet the condition, so they are consumed
+        if (epDecide.getEts() < ets) {
+            return true;
+        }
+
         //check the event condition
         if (ets != epDecide.getEts()) {
             return false;
@@ -156,7 +182,8 @@ public class UniformConsensusAbstraction extends AbstractAbstractionLayer {
                 .build();
 
         //add new layer into the consensus (epoch consensus layer)
-        consensus.pushLayer(new EpochConsensusAbstraction((ConsensusSystemModule) consensus, ets, state_));
+        epoch = new EpochConsensusAbstraction((ConsensusSystemModule) consensus, ets, state_);
+        consensus.pushLayer(epoch);
     }
 
     /**
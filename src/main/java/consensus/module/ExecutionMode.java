@@ -0,0 +1,33 @@
+package consensus.module;
+
+/**
+ * The kind of threads on which the consensus systems and the network operations of a node run
+ */
+public enum ExecutionMode {
+    /**
+     * The systems share a fixed pool of platform threads, all the inbound connections are read on one selector thread,
+     * and the outbound messages of every destination are written by a platform thread of that destination
+     */
+    POOLED,
+
+    /**
+     * Every system turn runs on its own virtual thread, every inbound connection is read on its own virtual thread, and
+     * the outbound messages of every destination are written by a virtual thread of that destination
+     */
+    VIRTUAL;
+
+    /**
+     * Get the execution mode by its name (case insensitive)
+     *
+     * @param name: the name of the mode
+     * @return the mode with the given name or POOLED if the name is null or unknown
+     */
+    public static ExecutionMode fromName(final String name) {
+        for (final var mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return POOLED;
+    }
+}
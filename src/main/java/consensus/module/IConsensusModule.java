@@ -2,6 +2,7 @@ package consensus.module;
 
 import consensus.Paxos;
 import consensus.algotithms.IAbstractionLayer;
+import utils.processes.ProcessRegistry;
 
 import java.util.List;
 import java.util.Optional;
@@ -19,6 +20,50 @@ public interface IConsensusModule {
      */
     void trigger(final Paxos.Message message);
 
+    /**
+     * This method triggers a new event after the given delay
+     *
+     * @param message: the message information
+     * @param delay:   the delay, in milliseconds
+     */
+    void triggerAfter(final Paxos.Message message, final long delay);
+
+    /**
+     * This method triggers a new event after the given delay, and it gives the timer of the event, so that a timeout
+     * can be cancelled or moved (for example when the event it waits for happens)
+     *
+     * @param message: the message information
+     * @param delay:   the delay, in milliseconds
+     * @return the timer
+     */
+    ITimer scheduleTimeout(final Paxos.Message message, final long delay);
+
+    /**
+     * Trigger the event of the timer after the given delay (counted from now), instead of its current deadline
+     * A timer that already fired or that was cancelled is scheduled again, so a repeating timeout can reuse its timer
+     *
+     * @param timer: a timer given by scheduleTimeout
+     * @param delay: the new delay, in milliseconds
+     */
+    void rescheduleTimeout(final ITimer timer, final long delay);
+
+    /**
+     * @param timer: a timer given by scheduleTimeout
+     * @return true if the timer was cancelled before it fired
+     */
+    boolean cancelTimeout(final ITimer timer);
+
+    /**
+     * Tell the system that it decided (and that the decision was sent to the hub)
+     * The system keeps running for a grace period, so that it still answers the other processes, and then it is
+     * drained and closed
+     */
+    void markDecided();
+
+    /**
+     * @return the state of the system
+     */
+    SystemState getState();
 
     /**
      * This method adds an another into the layer list
@@ -27,6 +72,32 @@ public interface IConsensusModule {
      */
     void pushLayer(final IAbstractionLayer layer);
 
+    /**
+     * The messages that could not be handled by any layer are parked under a key, and they are offered again only
+     * when a layer signals that the state they depend on has changed (or when a layer that handles them is pushed)
+     * This method should be called only by the layers, while they handle a message
+     *
+     * @param key: the key of the messages that will be offered again
+     */
+    void wakeParkedMessages(final ParkingKey key);
+
+    /**
+     * This method removes a layer from the layer list, so that it will no longer receive messages
+     *
+     * @param layer: the layer that will be removed
+     */
+    void retireLayer(final IAbstractionLayer layer);
+
+    /**
+     * @return the number of layers that currently receive messages
+     */
+    int getLiveLayersCount();
+
+    /**
+     * @return the number of layers that were removed since the system started
+     */
+    long getRetiredLayersCount();
+
     /**
      * Modify the inner process list
      *
@@ -65,6 +136,20 @@ public interface IConsensusModule {
      */
     List<Paxos.ProcessId> getProcessList();
 
+    /**
+     * @return the processes of the system, indexed by their position into the process list
+     */
+    ProcessRegistry getProcessRegistry();
+
+    /**
+     * Find the position of the process into the process list, so that the layers can keep the data of every process
+     * into arrays (or bitsets) instead of maps
+     *
+     * @param processId: the process (it is identified by its host and its port)
+     * @return the position of the process into the list, or -1 if the process is not into the list
+     */
+    int getProcessIndex(final Paxos.ProcessId processId);
+
     /**
      * This method it is used in order to identify the process that sent the message, based on it's port
      *
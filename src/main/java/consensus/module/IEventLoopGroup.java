@@ -0,0 +1,24 @@
+package consensus.module;
+
+import java.util.concurrent.TimeUnit;
+
+public interface IEventLoopGroup {
+
+    /**
+     * Run the task on one of the event loop threads
+     *
+     * @param task: the task that will be executed
+     */
+    void execute(final Runnable task);
+
+    /**
+     * Run the task after the given delay
+     * The task should be short (for example pushing a message into a system queue), because all the timers share a thread
+     *
+     * @param task:  the task that will be executed
+     * @param delay: the delay
+     * @param unit:  the unit of the delay
+     * @return the timer, that can be used for cancelling or moving the task
+     */
+    ITimer schedule(final Runnable task, final long delay, final TimeUnit unit);
+}
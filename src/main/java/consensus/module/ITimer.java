@@ -0,0 +1,32 @@
+package consensus.module;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task scheduled to run after a delay, that can be cancelled or moved while it waits
+ */
+public interface ITimer {
+
+    /**
+     * Cancel the timer, if it did not run yet
+     *
+     * @return true if the timer was waiting (so it will not run), false if it already ran or it was already cancelled
+     */
+    boolean cancel();
+
+    /**
+     * Run the task after the given delay (counted from now), instead of its current deadline
+     * A timer that already ran or that was cancelled is scheduled again, so the same timer can be reused for a
+     * timeout that repeats
+     *
+     * @param delay: the new delay
+     * @param unit:  the unit of the delay
+     * @return true if the timer was waiting (so it was moved), false if it was scheduled again
+     */
+    boolean reschedule(final long delay, final TimeUnit unit);
+
+    /**
+     * @return true if the timer waits to run (it did not run yet, and it was not cancelled)
+     */
+    boolean isPending();
+}
@@ -0,0 +1,110 @@
+package consensus.module;
+
+import consensus.Paxos;
+import utils.messages.MessagesHelper;
+
+import java.util.Objects;
+
+import static consensus.Paxos.Message.Type.BEB_DELIVER;
+import static consensus.Paxos.Message.Type.PL_DELIVER;
+
+/**
+ * Identifies a group of messages that could not be handled by any layer, and that are waiting for the same state change.
+ * A key consists of the message type, the type of the inner message (for PL_DELIVER and BEB_DELIVER) and the timestamp
+ * of the epoch to which the message belongs (if any).
+ */
+public final class ParkingKey {
+
+    public static final int NO_EPOCH = -1;
+
+    private final Paxos.Message.Type type;
+    private final Paxos.Message.Type innerType;
+    private final int ets;
+
+    private ParkingKey(final Paxos.Message.Type type, final Paxos.Message.Type innerType, final int ets) {
+        this.type = type;
+        this.innerType = innerType;
+        this.ets = ets;
+    }
+
+    /**
+     * Create the key of a message that depends on the timestamp of an epoch (EP_ABORTED, EP_DECIDE)
+     *
+     * @param type: the type of the message
+     * @param ets:  the timestamp of the epoch
+     * @return a new instance of ParkingKey
+     */
+    public static ParkingKey of(final Paxos.Message.Type type, final int ets) {
+        return new ParkingKey(type, null, ets);
+    }
+
+    /**
+     * Create the key under which the message will be parked
+     *
+     * @param message: the message
+     * @return a new instance of ParkingKey
+     */
+    public static ParkingKey of(final Paxos.Message message) {
+        switch (message.getType()) {
+            case EP_ABORTED:
+                return of(message.getType(), message.getEpAborted().getEts());
+            case EP_DECIDE:
+                return of(message.getType(), message.getEpDecide().getEts());
+            case PL_DELIVER:
+                return ofInnerMessage(PL_DELIVER, message.getPlDeliver().getMessage());
+            case BEB_DELIVER:
+                return ofInnerMessage(BEB_DELIVER, message.getBebDeliver().getMessage());
+        }
+        return new ParkingKey(message.getType(), null, NO_EPOCH);
+    }
+
+    /**
+     * @return the type of the parked messages
+     */
+    public Paxos.Message.Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the type of the inner message for PL_DELIVER and BEB_DELIVER or null otherwise
+     */
+    public Paxos.Message.Type getInnerType() {
+        return innerType;
+    }
+
+    /**
+     * @return the timestamp of the epoch to which the parked messages belong, or NO_EPOCH
+     */
+    public int getEts() {
+        return ets;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ParkingKey)) {
+            return false;
+        }
+        final var otherKey = (ParkingKey) other;
+        return type == otherKey.type && innerType == otherKey.innerType && ets == otherKey.ets;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, innerType, ets);
+    }
+
+    /**
+     * Create the key for a message that wraps another message
+     *
+     * @param type:         the type of the wrapper
+     * @param innerMessage: the wrapped message
+     * @return a new instance of ParkingKey
+     */
+    private static ParkingKey ofInnerMessage(final Paxos.Message.Type type, final Paxos.Message innerMessage) {
+        return new ParkingKey(type, innerMessage.getType(),
+                MessagesHelper.getEpochTimestamp(innerMessage).orElse(NO_EPOCH));
+    }
+}
@@ -0,0 +1,31 @@
+package consensus.module;
+
+/**
+ * The states through which a consensus system passes, from its creation until it is removed from its node
+ */
+public enum SystemState {
+    /**
+     * The system was created, but its process list is not known yet
+     */
+    STARTING,
+
+    /**
+     * The system runs the consensus algorithm
+     */
+    RUNNING,
+
+    /**
+     * The system decided, and it still answers the other processes (for the grace period), so they can decide as well
+     */
+    DECIDED,
+
+    /**
+     * The system no longer accepts received messages nor timers, and it handles only the messages already queued
+     */
+    DRAINING,
+
+    /**
+     * The system is stopped, and it is removed from its node
+     */
+    CLOSED
+}
@@ -3,90 +3,250 @@ package consensus.module.impl;
 import consensus.Paxos;
 import consensus.algotithms.IAbstractionLayer;
 import consensus.module.IConsensusModule;
+import consensus.module.IEventLoopGroup;
+import consensus.module.ITimer;
+import consensus.module.ParkingKey;
+import consensus.module.SystemState;
+import utils.messages.InboundMessage;
+import utils.messages.MessageLane;
+import utils.metrics.StageMetrics;
+import utils.processes.ProcessRegistry;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * A consensus system: the layers of the algorithm and the queues of their messages, drained on the event loops.
+ * A system is STARTING until it knows its processes, and then it is RUNNING. Once it decides, it still answers the
+ * other processes for a grace period (so they can decide as well), and then it is DRAINING: its timers are cancelled,
+ * the received messages are no longer accepted, and the messages already queued are handled. When its queues are
+ * empty the system is CLOSED, and its node is told to remove it.
+ */
 public class ConsensusSystemModule implements IConsensusModule {
 
+    private static final int MAX_MESSAGES_PER_TURN = 64;
+
     private final int nodePort;
     private final int hubPort;
     private final String hubIp;
     private final String systemId;
     private Paxos.ProcessId currentProcessId;
 
-    private final List<Paxos.ProcessId> processList = new CopyOnWriteArrayList<>();
-    private final List<IAbstractionLayer> abstractionList = new CopyOnWriteArrayList<>();
-    private final List<Paxos.Message> messageQueue = new CopyOnWriteArrayList<>();
+    private volatile ProcessRegistry processRegistry = ProcessRegistry.empty();
+    private final DispatchTable dispatchTable = new DispatchTable();
+    private final AtomicInteger liveLayersCount = new AtomicInteger();
+    private final AtomicLong retiredLayersCount = new AtomicLong();
+    private final Mailbox mailbox;
+    private final Deque<Paxos.Message> wokenMessages = new ArrayDeque<>();
+    private final Map<ParkingKey, List<Paxos.Message>> parkedMessages = new LinkedHashMap<>();
+    private final Set<ITimer> pendingTimers = ConcurrentHashMap.newKeySet();
 
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final IEventLoopGroup eventLoopGroup;
+    private final StageMetrics stageMetrics;
+    private final long gracePeriod;
+    private final Consumer<ConsensusSystemModule> closeListener;
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+    private volatile boolean isStarted;
+    private volatile SystemState state = SystemState.STARTING;
 
+    /**
+     * @param stageMetrics:  the metrics in which the systems of the node record how long the received messages wait in
+     *                       their queues, and how long the messages take to be handled
+     * @param laneMetrics:   the metrics in which the systems of the node record how long the messages of every lane
+     *                       wait in their queues
+     * @param gracePeriod:   how long the system keeps running after it decides, in milliseconds
+     * @param closeListener: called (on an event loop thread) once the system is closed
+     */
     public ConsensusSystemModule(final int hubPort,
-                                 final int nodePort, final String hubIp, final String systemId) {
+                                 final int nodePort, final String hubIp, final String systemId,
+                                 final IEventLoopGroup eventLoopGroup,
+                                 final StageMetrics stageMetrics,
+                                 final Map<MessageLane, StageMetrics> laneMetrics,
+                                 final long gracePeriod,
+                                 final Consumer<ConsensusSystemModule> closeListener) {
 
         this.nodePort = nodePort;
         this.hubIp = hubIp;
         this.hubPort = hubPort;
         this.systemId = systemId;
+        this.eventLoopGroup = eventLoopGroup;
+        this.stageMetrics = stageMetrics;
+        this.mailbox = new Mailbox(stageMetrics, laneMetrics);
+        this.gracePeriod = gracePeriod;
+        this.closeListener = closeListener;
     }
 
-    @SuppressWarnings("InfiniteLoopStatement")
     public void init() {
-        //run the function on another thread
-        executorService.execute(() -> {
-            //infinite loop
-            while (true) {
-                //iterate through message list and check what messages can be processed
-                for (int messageIndex = 0; !messageQueue.isEmpty() && messageIndex < messageQueue.size(); ++messageIndex) {
-                    //process the messages
-                    var wasProcessed = false;
-                    for (final var abstraction : abstractionList) {
-                        //check to see if the message can be processed by an abstraction layer
-                        if (abstraction.onMessage(messageQueue.get(messageIndex))) {
-                            wasProcessed = true;
-                        }
-                    }
-                    //if the message was handled that remove it from the queue
-                    if (wasProcessed) {
-                        messageQueue.remove(messageIndex);
-                        break;
-                    }
-                }
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
-
-
+        //from now on the messages are handled on the event loop threads
+        isStarted = true;
+        scheduleDrain();
     }
 
     @Override
     public void trigger(final Paxos.Message message) {
-        //add the message into queue, and set the systemId accordingly
-        messageQueue.add(message
+        //a closed system no longer handles messages
+        if (SystemState.CLOSED.equals(state)) {
+            return;
+        }
+
+        //add the message into the queue of its lane, and set the systemId accordingly
+        mailbox.addTriggered(message
                 .toBuilder()
                 .setSystemId(systemId)
                 .build()
         );
+        scheduleDrain();
+    }
+
+    /**
+     * Add a message received from the network into the queue of its lane
+     * A message that is not parsed yet is parsed only when it is taken from the queue, on the thread that drains the
+     * system
+     *
+     * The messages received after the system started draining are dropped
+     *
+     * @param message: the received message (its system id should be the id of this system)
+     */
+    public void deliver(final InboundMessage message) {
+        if (!acceptsInput()) {
+            return;
+        }
+        mailbox.addReceived(message);
+        scheduleDrain();
+    }
+
+    /**
+     * @return the number of received messages that wait in the queue
+     */
+    public int getInboundQueueSize() {
+        return mailbox.getReceivedCount();
+    }
+
+    /**
+     * @param lane: the lane
+     * @return the number of messages (triggered and received) that wait in the queue of the lane
+     */
+    public int getQueueSize(final MessageLane lane) {
+        return mailbox.getCount(lane);
+    }
+
+    @Override
+    public void triggerAfter(final Paxos.Message message, final long delay) {
+        scheduleTimeout(message, delay);
+    }
+
+    @Override
+    public ITimer scheduleTimeout(final Paxos.Message message, final long delay) {
+        final var timer = eventLoopGroup.schedule(() -> trigger(message), delay, TimeUnit.MILLISECONDS);
+
+        //a draining system no longer fires timers
+        if (!acceptsInput()) {
+            timer.cancel();
+            return timer;
+        }
+
+        //the timers are kept until the system drains, so that they can be cancelled (the fired ones are dropped here)
+        pendingTimers.removeIf(pendingTimer -> !pendingTimer.isPending());
+        pendingTimers.add(timer);
+        return timer;
+    }
+
+    @Override
+    public void rescheduleTimeout(final ITimer timer, final long delay) {
+        if (!acceptsInput()) {
+            return;
+        }
+        pendingTimers.add(timer);
+        timer.reschedule(delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean cancelTimeout(final ITimer timer) {
+        pendingTimers.remove(timer);
+        return timer.cancel();
+    }
+
+    @Override
+    public void markDecided() {
+        if (!SystemState.RUNNING.equals(state)) {
+            return;
+        }
+        state = SystemState.DECIDED;
+        eventLoopGroup.schedule(this::startDraining, gracePeriod, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public SystemState getState() {
+        return state;
     }
 
     @Override
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     public void alterProcessList(final List<Paxos.ProcessId> processesList) {
-        processList.addAll(processesList);
-        currentProcessId = getCurrentProcessPid().get();
+        //the processes are indexed once, so that they are never searched by scanning the list
+        final var processes = new ArrayList<>(processRegistry.getProcesses());
+        processes.addAll(processesList);
+        processRegistry = new ProcessRegistry(processes);
+        currentProcessId = processRegistry.getProcess(processRegistry.indexOf(nodePort));
+
+        //the system runs the algorithm once it knows its processes
+        if (SystemState.STARTING.equals(state)) {
+            state = SystemState.RUNNING;
+        }
     }
 
 
     @Override
     public void pushLayer(final IAbstractionLayer abstractionLayer) {
-        abstractionList.add(abstractionLayer);
+        dispatchTable.register(abstractionLayer);
+        liveLayersCount.incrementAndGet();
+
+        //the parked messages that the new layer declared that it can handle should be offered again
+        final var catchAllLayers = dispatchTable.getCatchAllLayers();
+        new ArrayList<>(parkedMessages.keySet())
+                .stream()
+                .filter(key -> catchAllLayers.contains(abstractionLayer)
+                        || dispatchTable.getLayers(key.getType(), key.getInnerType()).contains(abstractionLayer))
+                .forEach(this::wakeParkedMessages);
+    }
+
+    @Override
+    public void wakeParkedMessages(final ParkingKey key) {
+        final var messages = parkedMessages.remove(key);
+        if (messages != null) {
+            wokenMessages.addAll(messages);
+        }
+    }
+
+    @Override
+    public void retireLayer(final IAbstractionLayer abstractionLayer) {
+        //if the layer was not into the table, there is nothing to count
+        if (!dispatchTable.unregister(abstractionLayer)) {
+            return;
+        }
+        liveLayersCount.decrementAndGet();
+        retiredLayersCount.incrementAndGet();
+    }
+
+    @Override
+    public int getLiveLayersCount() {
+        return liveLayersCount.get();
+    }
+
+    @Override
+    public long getRetiredLayersCount() {
+        return retiredLayersCount.get();
     }
 
     @Override
@@ -106,7 +266,17 @@ public class ConsensusSystemModule implements IConsensusModule {
 
     @Override
     public List<Paxos.ProcessId> getProcessList() {
-        return processList;
+        return processRegistry.getProcesses();
+    }
+
+    @Override
+    public ProcessRegistry getProcessRegistry() {
+        return processRegistry;
+    }
+
+    @Override
+    public int getProcessIndex(final Paxos.ProcessId processId) {
+        return processRegistry.indexOf(processId);
     }
 
     @Override
@@ -122,19 +292,106 @@ public class ConsensusSystemModule implements IConsensusModule {
     @Override
     public Optional<Paxos.ProcessId> identifySenderProcessByNetworkMessage(final Paxos.NetworkMessage networkMessage) {
         //get the process that sent the network message
-        return processList
-                .stream()
-                .filter(processId -> processId.getPort() == networkMessage.getSenderListeningPort())
-                .findFirst();
+        final var registry = processRegistry;
+        final var processIndex = registry.indexOf(networkMessage.getSenderListeningPort());
+        return processIndex < 0 ? Optional.empty() : Optional.of(registry.getProcess(processIndex));
     }
 
     /**
-     * @return the process that have the same port with the nodePort aka the process into that the current system runs
+     * Submit the system to the event loop group, if it is not already submitted
+     * This guarantees that the system is drained by at most one thread at a time
      */
-    private Optional<Paxos.ProcessId> getCurrentProcessPid() {
-        return processList
-                .stream()
-                .filter(process -> process.getPort() == nodePort)
-                .findFirst();
+    private void scheduleDrain() {
+        //a draining system is submitted even if its queues are empty, so that it is closed
+        final var hasWork = !mailbox.isEmpty() || SystemState.DRAINING.equals(state);
+        if (isStarted && hasWork && isScheduled.compareAndSet(false, true)) {
+            eventLoopGroup.execute(this::drainMessages);
+        }
+    }
+
+    /**
+     * Handle the messages from the queue, until the queue is empty or the system has used its turn
+     * If the turn is over, the system is submitted again, so that the other systems of the node could also run
+     */
+    private void drainMessages() {
+        for (int messageIndex = 0; messageIndex < MAX_MESSAGES_PER_TURN; ++messageIndex) {
+            //the woken messages are older than the ones from the mailbox, so they are handled first
+            final var message = wokenMessages.isEmpty() ? mailbox.poll(messageIndex) : wokenMessages.poll();
+
+            //a draining system whose queues are empty is closed (and it is never submitted again)
+            if (message == null && SystemState.DRAINING.equals(state)) {
+                close();
+                return;
+            }
+
+            //if there is no message, release the system and check if a message was pushed meanwhile
+            if (message == null) {
+                isScheduled.set(false);
+                scheduleDrain();
+                return;
+            }
+
+            //if no abstraction layer could handle the message, park it until the state it depends on changes
+            final var startedAt = System.nanoTime();
+            if (!dispatchMessage(message)) {
+                parkedMessages.computeIfAbsent(ParkingKey.of(message), key -> new ArrayList<>()).add(message);
+            }
+            stageMetrics.recordService(System.nanoTime() - startedAt);
+        }
+
+        eventLoopGroup.execute(this::drainMessages);
+    }
+
+    /**
+     * Offer the message to every abstraction layer that declared that it can handle the message type
+     *
+     * @param message: the message that will be handled
+     * @return true if at least one of the layers handled the message or false otherwise
+     */
+    private boolean dispatchMessage(final Paxos.Message message) {
+        var wasProcessed = false;
+        for (final var abstraction : dispatchTable.getLayers(message)) {
+            //check to see if the message can be processed by an abstraction layer
+            if (abstraction.onMessage(message)) {
+                wasProcessed = true;
+            }
+        }
+        for (final var abstraction : dispatchTable.getCatchAllLayers()) {
+            if (abstraction.onMessage(message)) {
+                wasProcessed = true;
+            }
+        }
+        return wasProcessed;
+    }
+
+    /**
+     * @return true if the system accepts received messages and timers (it is not draining nor closed)
+     */
+    private boolean acceptsInput() {
+        final var currentState = state;
+        return !SystemState.DRAINING.equals(currentState) && !SystemState.CLOSED.equals(currentState);
+    }
+
+    /**
+     * Stop the timers and the received messages, and let the system handle the messages already queued
+     * It runs on the timer thread, once the grace period passes
+     */
+    private void startDraining() {
+        state = SystemState.DRAINING;
+        pendingTimers.forEach(ITimer::cancel);
+        pendingTimers.clear();
+        scheduleDrain();
+    }
+
+    /**
+     * Drop everything that the system still keeps, and tell the node that the system is closed
+     * It runs on the thread that drains the system, once its queues are empty
+     */
+    private void close() {
+        state = SystemState.CLOSED;
+        mailbox.clear();
+        wokenMessages.clear();
+        parkedMessages.clear();
+        closeListener.accept(this);
     }
 }
@@ -0,0 +1,144 @@
+package consensus.module.impl;
+
+import consensus.Paxos;
+import consensus.algotithms.IAbstractionLayer;
+import consensus.algotithms.IDispatchableAbstractionLayer;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static consensus.Paxos.Message.Type.BEB_DELIVER;
+import static consensus.Paxos.Message.Type.PL_DELIVER;
+
+/**
+ * Associates every message type with the abstraction layers that declared that they can handle it.
+ * The PL_DELIVER and BEB_DELIVER messages are routed by the type of the message that they carry.
+ * The layers that do not declare their messages are offered every message.
+ */
+class DispatchTable {
+
+    private final Map<Paxos.Message.Type, List<IAbstractionLayer>> layersByType = createTable();
+    private final Map<Paxos.Message.Type, List<IAbstractionLayer>> layersByPlDeliverType = createTable();
+    private final Map<Paxos.Message.Type, List<IAbstractionLayer>> layersByBebDeliverType = createTable();
+    private final List<IAbstractionLayer> catchAllLayers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Register the layer for all the message types that it declares
+     *
+     * @param layer: the layer that will be registered
+     */
+    void register(final IAbstractionLayer layer) {
+        //if the layer does not declare the messages, it should receive all of them
+        if (!(layer instanceof IDispatchableAbstractionLayer)) {
+            catchAllLayers.add(layer);
+            return;
+        }
+
+        final var dispatchableLayer = (IDispatchableAbstractionLayer) layer;
+        for (final var type : dispatchableLayer.getHandledMessageTypes()) {
+            switch (type) {
+                case PL_DELIVER:
+                    layersByPlDeliverType.values().forEach(layers -> layers.add(layer));
+                    break;
+                case BEB_DELIVER:
+                    layersByBebDeliverType.values().forEach(layers -> layers.add(layer));
+                    break;
+                default:
+                    layersByType.get(type).add(layer);
+            }
+        }
+
+        addToTable(layersByPlDeliverType, dispatchableLayer.getHandledPlDeliverTypes(), layer);
+        addToTable(layersByBebDeliverType, dispatchableLayer.getHandledBebDeliverTypes(), layer);
+    }
+
+    /**
+     * Remove the layer from the table, so that it will not receive any other message
+     *
+     * @param layer: the layer that will be removed
+     * @return true if the layer was registered or false otherwise
+     */
+    boolean unregister(final IAbstractionLayer layer) {
+        var wasRegistered = catchAllLayers.remove(layer);
+        for (final var table : List.of(layersByType, layersByPlDeliverType, layersByBebDeliverType)) {
+            for (final var layers : table.values()) {
+                wasRegistered |= layers.remove(layer);
+            }
+        }
+        return wasRegistered;
+    }
+
+    /**
+     * Get the layers that can handle the message (excepting the ones that do not declare their messages)
+     *
+     * @param message: the message
+     * @return a list of layers, in the order in which they were registered
+     */
+    List<IAbstractionLayer> getLayers(final Paxos.Message message) {
+        final var type = message.getType();
+        if (PL_DELIVER.equals(type)) {
+            return getLayers(type, message.getPlDeliver().getMessage().getType());
+        }
+        if (BEB_DELIVER.equals(type)) {
+            return getLayers(type, message.getBebDeliver().getMessage().getType());
+        }
+        return getLayers(type, null);
+    }
+
+    /**
+     * Get the layers that can handle the messages of the given type (excepting the ones that do not declare their messages)
+     *
+     * @param type:      the message type
+     * @param innerType: the type of the inner message (used only for PL_DELIVER and BEB_DELIVER)
+     * @return a list of layers, in the order in which they were registered
+     */
+    List<IAbstractionLayer> getLayers(final Paxos.Message.Type type, final Paxos.Message.Type innerType) {
+        if (PL_DELIVER.equals(type)) {
+            return layersByPlDeliverType.get(innerType);
+        }
+        if (BEB_DELIVER.equals(type)) {
+            return layersByBebDeliverType.get(innerType);
+        }
+        return layersByType.get(type);
+    }
+
+    /**
+     * @return the layers that should receive every message
+     */
+    List<IAbstractionLayer> getCatchAllLayers() {
+        return catchAllLayers;
+    }
+
+    /**
+     * Add the layer into the table, for each of the given types
+     *
+     * @param table: the table
+     * @param types: the message types
+     * @param layer: the layer
+     */
+    private static void addToTable(final Map<Paxos.Message.Type, List<IAbstractionLayer>> table,
+                                   final Set<Paxos.Message.Type> types, final IAbstractionLayer layer) {
+        for (final var type : types) {
+            //do not register the layer twice if it already receives all the messages of the outer type
+            if (!table.get(type).contains(layer)) {
+                table.get(type).add(layer);
+            }
+        }
+    }
+
+    /**
+     * Create a table that has an entry for every message type, so that the map is never modified after creation
+     *
+     * @return the table
+     */
+    private static Map<Paxos.Message.Type, List<IAbstractionLayer>> createTable() {
+        final var table = new EnumMap<Paxos.Message.Type, List<IAbstractionLayer>>(Paxos.Message.Type.class);
+        for (final var type : Paxos.Message.Type.values()) {
+            table.put(type, new CopyOnWriteArrayList<>());
+        }
+        return table;
+    }
+}
@@ -0,0 +1,67 @@
+package consensus.module.impl;
+
+import consensus.module.ExecutionMode;
+import consensus.module.IEventLoopGroup;
+import consensus.module.ITimer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A group of threads on which all the consensus systems of a node run.
+ * In the pooled mode the systems share a fixed pool of threads, while in the virtual mode every turn of a system runs
+ * on its own virtual thread.
+ * Every system drains its own queue, and it is never executed by two threads at the same time, so the messages of a
+ * system are still handled one by one, in order.
+ * All the timers of the systems wait on one timer wheel, so a timer costs the same whatever the number of timers.
+ */
+public class EventLoopGroup implements IEventLoopGroup {
+
+    private static final long TIMER_TICK_MILLIS = 10;
+
+    private final ExecutorService loopsService;
+    private final TimerWheel timerWheel;
+
+    /**
+     * @param name:          the name of the group (used for naming the threads)
+     * @param threadsCount:  the number of event loop threads, or 0 for one thread per available core
+     * @param executionMode: the kind of threads on which the systems run
+     */
+    public EventLoopGroup(final String name, final int threadsCount, final ExecutionMode executionMode) {
+        final var loopsCount = threadsCount > 0 ? threadsCount : Runtime.getRuntime().availableProcessors();
+        this.timerWheel = new TimerWheel(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, createThreadFactory(name + "-timer-"));
+        this.timerWheel.start();
+
+        //in the virtual mode a thread is created for every task, so there is nothing to size
+        if (ExecutionMode.VIRTUAL.equals(executionMode)) {
+            this.loopsService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-loop-", 1).factory());
+            return;
+        }
+
+        this.loopsService = Executors.newFixedThreadPool(loopsCount, createThreadFactory(name + "-loop-"));
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        loopsService.execute(task);
+    }
+
+    @Override
+    public ITimer schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        return timerWheel.schedule(task, delay, unit);
+    }
+
+    /**
+     * Create a thread factory that names the threads with the given prefix followed by their index
+     *
+     * @param prefix: the prefix of the name
+     * @return a new instance of ThreadFactory
+     */
+    private static ThreadFactory createThreadFactory(final String prefix) {
+        final var threadIndex = new AtomicInteger();
+        return task -> new Thread(task, prefix + threadIndex.incrementAndGet());
+    }
+}
@@ -0,0 +1,181 @@
+package consensus.module.impl;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import consensus.Paxos;
+import utils.messages.InboundMessage;
+import utils.messages.MessageLane;
+import utils.metrics.StageMetrics;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The queues of the messages of a system: the messages triggered by its layers and the messages received from the
+ * network, split by their lane (control, protocol and bulk).
+ * The control lane is always emptied first, so the failure detector messages never wait behind the other ones. The
+ * protocol lane comes next, but one message in every BULK_SHARE is taken from the bulk lane first, so the bulk
+ * messages are never starved. Inside a lane the triggered and the received messages take turns, so that none of them
+ * waits for the other.
+ * The messages can be added from any thread, but they are taken only by the thread that drains the system.
+ */
+class Mailbox {
+
+    private static final int BULK_SHARE = 4;
+
+    private final Lane[] lanes = new Lane[MessageLane.values().length];
+    private final StageMetrics receivedMetrics;
+
+    /**
+     * @param receivedMetrics: the metrics in which the wait of the received messages is recorded (whatever their lane)
+     * @param laneMetrics:     the metrics in which the wait of the messages of every lane is recorded
+     */
+    Mailbox(final StageMetrics receivedMetrics, final Map<MessageLane, StageMetrics> laneMetrics) {
+        this.receivedMetrics = receivedMetrics;
+        for (final var lane : MessageLane.values()) {
+            lanes[lane.ordinal()] = new Lane(laneMetrics.get(lane));
+        }
+    }
+
+    /**
+     * @param message: a message triggered by a layer of the system
+     */
+    void addTriggered(final Paxos.Message message) {
+        lanes[MessageLane.of(message).ordinal()].triggered.add(new TriggeredMessage(message, System.nanoTime()));
+    }
+
+    /**
+     * @param message: a message received from the network (if it is not parsed yet, it is parsed only when it is taken)
+     */
+    void addReceived(final InboundMessage message) {
+        message.setQueuedAt(System.nanoTime());
+        lanes[MessageLane.ofCarried(message.getInnerType()).ordinal()].received.add(message);
+    }
+
+    /**
+     * Take the next message, from the highest priority lane that has messages
+     *
+     * @param messageIndex: the index of the message in the current turn of the system
+     * @return the message, or null if the mailbox is empty
+     */
+    Paxos.Message poll(final int messageIndex) {
+        var message = lanes[MessageLane.CONTROL.ordinal()].poll(messageIndex);
+        if (message != null) {
+            return message;
+        }
+
+        final var isBulkTurn = messageIndex % BULK_SHARE == BULK_SHARE - 1;
+        final var first = lanes[(isBulkTurn ? MessageLane.BULK : MessageLane.PROTOCOL).ordinal()];
+        final var second = lanes[(isBulkTurn ? MessageLane.PROTOCOL : MessageLane.BULK).ordinal()];
+        message = first.poll(messageIndex);
+        return message != null ? message : second.poll(messageIndex);
+    }
+
+    /**
+     * @return true if no message waits
+     */
+    boolean isEmpty() {
+        for (final var lane : lanes) {
+            if (!lane.triggered.isEmpty() || !lane.received.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of received messages that wait
+     */
+    int getReceivedCount() {
+        var count = 0;
+        for (final var lane : lanes) {
+            count += lane.received.size();
+        }
+        return count;
+    }
+
+    /**
+     * @param lane: the lane
+     * @return the number of messages (triggered and received) that wait in the lane
+     */
+    int getCount(final MessageLane lane) {
+        return lanes[lane.ordinal()].triggered.size() + lanes[lane.ordinal()].received.size();
+    }
+
+    /**
+     * Drop all the messages
+     */
+    void clear() {
+        for (final var lane : lanes) {
+            lane.triggered.clear();
+            lane.received.clear();
+        }
+    }
+
+    /**
+     * The triggered and the received messages of a lane
+     */
+    private final class Lane {
+
+        private final Queue<TriggeredMessage> triggered = new ConcurrentLinkedQueue<>();
+        private final Queue<InboundMessage> received = new ConcurrentLinkedQueue<>();
+        private final StageMetrics metrics;
+
+        private Lane(final StageMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * @param messageIndex: the index of the message in the current turn of the system
+         * @return the next message of the lane, or null if the lane is empty
+         */
+        private Paxos.Message poll(final int messageIndex) {
+            if (messageIndex % 2 == 0) {
+                final var message = pollTriggered();
+                return message != null ? message : pollReceived();
+            }
+            final var message = pollReceived();
+            return message != null ? message : pollTriggered();
+        }
+
+        private Paxos.Message pollTriggered() {
+            final var triggeredMessage = triggered.poll();
+            if (triggeredMessage == null) {
+                return null;
+            }
+            metrics.recordWait(System.nanoTime() - triggeredMessage.queuedAt);
+            return triggeredMessage.message;
+        }
+
+        /**
+         * Take the next received message and parse it (the messages that cannot be parsed are skipped)
+         */
+        private Paxos.Message pollReceived() {
+            for (var inboundMessage = received.poll(); inboundMessage != null; inboundMessage = received.poll()) {
+                final var waitNanos = System.nanoTime() - inboundMessage.getQueuedAt();
+                receivedMetrics.recordWait(waitNanos);
+                metrics.recordWait(waitNanos);
+                try {
+                    return inboundMessage.getMessage();
+                } catch (final InvalidProtocolBufferException e) {
+                    e.printStackTrace();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A triggered message, with the moment (System.nanoTime) when it was queued
+     */
+    private static final class TriggeredMessage {
+
+        private final Paxos.Message message;
+        private final long queuedAt;
+
+        private TriggeredMessage(final Paxos.Message message, final long queuedAt) {
+            this.message = message;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package consensus.module.impl;
+
+import consensus.module.ITimer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timer wheel, on which all the timers of a node wait.
+ * The time is split into ticks, and every level of the wheel is an array of slots: a slot of the first level holds the
+ * timers of one tick, and a slot of every next level holds the timers of a whole turn of the level below. A timer is
+ * put into the lowest level that reaches its deadline, and when a level completes a turn the next slot of the level
+ * above is moved down (cascaded). So adding, cancelling and running a timer are O(1), whatever the number of timers,
+ * and the wheel reaches 2^32 ticks ahead (the longer delays are clamped).
+ * The slots are doubly linked lists, owned by the thread of the wheel: the other threads only queue the timers that
+ * they schedule, cancel or move, and the wheel thread applies the changes at the start of every tick. When no timer
+ * waits, the wheel thread sleeps until one is scheduled.
+ * The tasks run on the wheel thread, so they should be short (for example pushing a message into a system queue).
+ * A timer runs at the first tick after its deadline, so it is never early, and it is at most one tick late (if the
+ * wheel thread keeps up).
+ */
+public class TimerWheel {
+
+    private static final int[] LEVEL_BITS = {8, 6, 6, 6, 6};
+    private static final long MAX_DELAY_TICKS = (1L << 32) - 1;
+
+    private static final int PENDING = 0;
+    private static final int EXPIRED = 1;
+    private static final int CANCELLED = 2;
+    private static final AtomicIntegerFieldUpdater<Timer> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+
+    private final long tickNanos;
+    private final long startedAt = System.nanoTime();
+    private final Slot[][] levels = new Slot[LEVEL_BITS.length][];
+    private final int[] levelShifts = new int[LEVEL_BITS.length];
+    private final Queue<Timer> changedTimers = new ConcurrentLinkedQueue<>();
+    private final ThreadFactory threadFactory;
+    private volatile Thread thread;
+    private volatile boolean isSleeping;
+    private volatile boolean isStopped;
+
+    //owned by the wheel thread
+    private long currentTick;
+    private long timersCount;
+
+    /**
+     * @param tickDuration:  the duration of a tick (the precision of the timers)
+     * @param unit:          the unit of the duration
+     * @param threadFactory: the factory of the wheel thread (the thread is started by start)
+     */
+    public TimerWheel(final long tickDuration, final TimeUnit unit, final ThreadFactory threadFactory) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.threadFactory = threadFactory;
+
+        var shift = 0;
+        for (var level = 0; level < LEVEL_BITS.length; ++level) {
+            levels[level] = new Slot[1 << LEVEL_BITS[level]];
+            for (var slot = 0; slot < levels[level].length; ++slot) {
+                levels[level][slot] = new Slot();
+            }
+            levelShifts[level] = shift;
+            shift += LEVEL_BITS[level];
+        }
+    }
+
+    /**
+     * Start the wheel thread (the timers scheduled before wait until it starts)
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = threadFactory.newThread(this::run);
+        thread.start();
+    }
+
+    /**
+     * Run the task after the given delay
+     *
+     * @param task:  the task
+     * @param delay: the delay
+     * @param unit:  the unit of the delay
+     * @return the timer, that can be cancelled or moved
+     */
+    public ITimer schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final var timer = new Timer(task);
+        timer.requestedDeadline = deadlineOf(delay, unit);
+        submit(timer);
+        return timer;
+    }
+
+    /**
+     * Stop the wheel thread (the timers that wait never run)
+     */
+    public synchronized void stop() {
+        isStopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @param delay: the delay
+     * @param unit:  the unit of the delay
+     * @return the first tick that starts after the delay passes (counted from now)
+     */
+    private long deadlineOf(final long delay, final TimeUnit unit) {
+        final var delayNanos = Math.min(Math.max(0, unit.toNanos(delay)), Long.MAX_VALUE / 2);
+        final var elapsedNanos = System.nanoTime() - startedAt + delayNanos;
+        return (elapsedNanos + tickNanos - 1) / tickNanos;
+    }
+
+    /**
+     * Queue the timer for the wheel thread, and wake the thread if it sleeps
+     *
+     * @param timer: the timer that was scheduled, cancelled or moved
+     */
+    private void submit(final Timer timer) {
+        changedTimers.add(timer);
+        if (isSleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * The loop of the wheel thread: wait for the next tick, apply the changes, and run the expired timers
+     */
+    private void run() {
+        while (!isStopped) {
+            //if no timer waits, sleep until one is scheduled (and skip the ticks that passed meanwhile)
+            if (timersCount == 0 && changedTimers.isEmpty()) {
+                isSleeping = true;
+                if (changedTimers.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                isSleeping = false;
+                currentTick = (System.nanoTime() - startedAt) / tickNanos;
+                applyChanges();
+                continue;
+            }
+
+            //wait for the next tick
+            final var nextTickAt = startedAt + (currentTick + 1) * tickNanos;
+            final var waitNanos = nextTickAt - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+
+            //handle all the ticks that passed (there are several if the thread was late)
+            applyChanges();
+            final var lastTick = (System.nanoTime() - startedAt) / tickNanos;
+            while (currentTick < lastTick && !isStopped) {
+                ++currentTick;
+                cascade();
+                expire(levels[0][(int) (currentTick & (levels[0].length - 1))]);
+            }
+        }
+    }
+
+    /**
+     * Put into the wheel the timers that were scheduled or moved, and take out the ones that were cancelled
+     */
+    private void applyChanges() {
+        for (var timer = changedTimers.poll(); timer != null; timer = changedTimers.poll()) {
+            if (timer.slot != null) {
+                timer.slot.remove(timer);
+                --timersCount;
+            }
+            if (timer.state == PENDING) {
+                timer.deadline = timer.requestedDeadline;
+                add(timer, currentTick + 1);
+            }
+        }
+    }
+
+    /**
+     * When the first level completes a turn, move down the next slot of the level above (and so on, for every level
+     * that completes a turn)
+     */
+    private void cascade() {
+        for (var level = 1; level < levels.length; ++level) {
+            //the level below did not complete a turn
+            if ((currentTick & ((1L << levelShifts[level]) - 1)) != 0) {
+                return;
+            }
+            final var slot = levels[level][(int) ((currentTick >>> levelShifts[level]) & (levels[level].length - 1))];
+            for (var timer = slot.poll(); timer != null; timer = slot.poll()) {
+                --timersCount;
+                add(timer, currentTick);
+            }
+        }
+    }
+
+    /**
+     * Run the timers of the slot of the current tick
+     *
+     * @param slot: the slot
+     */
+    private void expire(final Slot slot) {
+        for (var timer = slot.poll(); timer != null; timer = slot.poll()) {
+            --timersCount;
+
+            //a cancelled timer is dropped, and a timer that was moved meanwhile waits for its new deadline
+            if (timer.state != PENDING) {
+                continue;
+            }
+            timer.deadline = timer.requestedDeadline;
+            if (timer.deadline > currentTick) {
+                add(timer, currentTick + 1);
+                continue;
+            }
+            if (!STATE.compareAndSet(timer, PENDING, EXPIRED)) {
+                continue;
+            }
+            try {
+                timer.task.run();
+            } catch (final Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Put the timer into the slot of the lowest level that reaches its deadline
+     *
+     * @param timer:        the timer
+     * @param earliestTick: the first tick whose slot was not run yet (the timers whose deadline passed are put there)
+     */
+    private void add(final Timer timer, final long earliestTick) {
+        final var deadline = Math.max(timer.deadline, earliestTick);
+        final var delayTicks = Math.min(deadline - currentTick, MAX_DELAY_TICKS);
+        final var slotTick = currentTick + delayTicks;
+
+        var level = 0;
+        while (level < levels.length - 1 && delayTicks >= 1L << (levelShifts[level] + LEVEL_BITS[level])) {
+            ++level;
+        }
+        levels[level][(int) ((slotTick >>> levelShifts[level]) & (levels[level].length - 1))].add(timer);
+        ++timersCount;
+    }
+
+    /**
+     * A timer of the wheel
+     */
+    private final class Timer implements ITimer {
+
+        private final Runnable task;
+        volatile int state = PENDING;
+        private volatile long requestedDeadline;
+
+        //owned by the wheel thread
+        private long deadline = -1;
+        private Slot slot;
+        private Timer previous;
+        private Timer next;
+
+        private Timer(final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            submit(this);
+            return true;
+        }
+
+        @Override
+        public boolean reschedule(final long delay, final TimeUnit unit) {
+            requestedDeadline = deadlineOf(delay, unit);
+            final var wasPending = STATE.getAndSet(this, PENDING) == PENDING;
+            submit(this);
+            return wasPending;
+        }
+
+        @Override
+        public boolean isPending() {
+            return state == PENDING;
+        }
+    }
+
+    /**
+     * A slot of the wheel: a doubly linked list of timers, so that a timer is removed in O(1)
+     */
+    private static final class Slot {
+
+        private Timer head;
+
+        private void add(final Timer timer) {
+            timer.slot = this;
+            timer.previous = null;
+            timer.next = head;
+            if (head != null) {
+                head.previous = timer;
+            }
+            head = timer;
+        }
+
+        private void remove(final Timer timer) {
+            if (timer.previous != null) {
+                timer.previous.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.previous = timer.previous;
+            }
+            timer.slot = null;
+            timer.previous = null;
+            timer.next = null;
+        }
+
+        private Timer poll() {
+            final var timer = head;
+            if (timer != null) {
+                remove(timer);
+            }
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package consensus.node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public interface IInboundTransport {
+
+    /**
+     * Start listening for connections, and reading the length prefixed messages written on them
+     * Every accepted connection gets its own handler, to which its messages are passed (without their length), in the
+     * order in which they were read
+     * A message is passed as the read buffer, with its position and limit set around the message, and the buffer is
+     * reused once the handler returns
+     * The handlers of different connections may be called from several threads at the same time
+     *
+     * @param frameHandlers: creates the handler of the messages of a connection
+     * @throws IOException if the listening connection could not be created
+     */
+    void start(final Supplier<Consumer<ByteBuffer>> frameHandlers) throws IOException;
+}
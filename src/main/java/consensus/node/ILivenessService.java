@@ -0,0 +1,23 @@
+package consensus.node;
+
+import consensus.Paxos;
+import consensus.module.IConsensusModule;
+
+public interface ILivenessService {
+
+    /**
+     * Watch the process for the system: the system receives an EPFD_SUSPECT when the process is suspected, and an
+     * EPFD_RESTORE when it is alive again (if the process is already suspected, the EPFD_SUSPECT is sent right away)
+     *
+     * @param process: the process
+     * @param system:  the system that subscribes
+     */
+    void subscribe(final Paxos.ProcessId process, final IConsensusModule system);
+
+    /**
+     * Stop sending the suspicions of any process to the system
+     *
+     * @param system: the system
+     */
+    void unsubscribe(final IConsensusModule system);
+}
@@ -0,0 +1,74 @@
+package consensus.node.impl;
+
+import consensus.node.IInboundTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Accepts the connections on one thread, and reads every connection on its own virtual thread, using blocking channels
+ * (the messages are split by a FrameDecoder).
+ * It is meant for the virtual mode, where a blocked thread is cheap.
+ */
+public class BlockingInboundTransport implements IInboundTransport {
+
+    private final int port;
+    private final Thread.Builder readerThreads;
+    private final ExecutorService acceptService = Executors.newSingleThreadExecutor();
+
+    /**
+     * @param port: the port on which the connections are accepted
+     * @param name: the name of the transport (used for naming the reader threads)
+     */
+    public BlockingInboundTransport(final int port, final String name) {
+        this.port = port;
+        this.readerThreads = Thread.ofVirtual().name(name + "-reader-", 1);
+    }
+
+    @Override
+    @SuppressWarnings("InfiniteLoopStatement")
+    public void start(final Supplier<Consumer<ByteBuffer>> frameHandlers) throws IOException {
+        //create a listening connection on the port
+        final var socket = ServerSocketChannel.open();
+        socket.bind(new InetSocketAddress(port));
+
+        //execute the infinitely read on another thread
+        acceptService.submit(() -> {
+            //infinitely read loop
+            while (true) {
+                try {
+                    //wait until a connection is opened, and read its messages on another thread
+                    final var connection = socket.accept();
+                    readerThreads.start(() -> readMessages(connection, frameHandlers.get()));
+                } catch (final Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the messages from the connection and handle them, until the sender closes the connection
+     * A sender may write only one message per connection, or keep the connection and write many messages on it
+     *
+     * @param connection:   the accepted connection
+     * @param frameHandler: the handler of the messages of the connection
+     */
+    private static void readMessages(final SocketChannel connection, final Consumer<ByteBuffer> frameHandler) {
+        try (connection; var frameDecoder = new FrameDecoder(frameHandler)) {
+            //read until the sender closes the connection (or writes an invalid length)
+            while (frameDecoder.read(connection)) {
+                //every read blocks until some bytes are available
+            }
+        } catch (final Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package consensus.node.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the ids of the messages received recently, so that a message received a second time can be dropped.
+ * The ids are kept as 64 bit fingerprints (of the sender port and the message id) in two fixed size hash tables: new
+ * ids are added into the current table, and when it is half full, or when the time window passes, the tables are
+ * swapped and the older one is cleared. So the memory is fixed, and every id is remembered for at least one time
+ * window (unless more ids than the table capacity are received meanwhile), and for at most two.
+ * It is not thread safe: HubNode keeps one filter per route, and uses it only under the lock of the route, so the
+ * memory of the node is fixed too (the number of routes times the two tables).
+ */
+class DuplicateFilter {
+
+    private static final int TABLE_SIZE = 8192;
+    private static final int MAX_TABLE_ENTRIES = TABLE_SIZE / 2;
+    private static final long WINDOW_MILLIS = 10_000;
+
+    private long[] currentTable = new long[TABLE_SIZE];
+    private long[] previousTable = new long[TABLE_SIZE];
+    private int currentEntriesCount;
+    private long currentStartedAt = System.currentTimeMillis();
+
+    private final LongAdder hitsCount = new LongAdder();
+    private final LongAdder missesCount = new LongAdder();
+
+    /**
+     * Check if the message was already received, and remember it otherwise
+     *
+     * @param senderPort:  the port on which the sender listens
+     * @param messageUuid: the id given to the message by its sender
+     * @return true if the message was received recently (so it is a duplicate), false otherwise
+     */
+    boolean isDuplicate(final int senderPort, final String messageUuid) {
+        final var fingerprint = fingerprint(senderPort, messageUuid);
+        if (contains(currentTable, fingerprint) || contains(previousTable, fingerprint)) {
+            hitsCount.increment();
+            return true;
+        }
+        missesCount.increment();
+
+        //start a new window, if the current one is full or it is too old
+        final var now = System.currentTimeMillis();
+        if (currentEntriesCount >= MAX_TABLE_ENTRIES || now - currentStartedAt >= WINDOW_MILLIS) {
+            final var table = previousTable;
+            previousTable = currentTable;
+            currentTable = table;
+            Arrays.fill(currentTable, 0);
+            currentEntriesCount = 0;
+            currentStartedAt = now;
+        }
+
+        add(currentTable, fingerprint);
+        ++currentEntriesCount;
+        return false;
+    }
+
+    /**
+     * @return the number of messages that were found to be duplicates
+     */
+    long getHitsCount() {
+        return hitsCount.sum();
+    }
+
+    /**
+     * @return the number of messages that were received for the first time
+     */
+    long getMissesCount() {
+        return missesCount.sum();
+    }
+
+    /**
+     * @param table:       the hash table (0 marks an empty slot)
+     * @param fingerprint: the fingerprint
+     * @return true if the fingerprint is in the table
+     */
+    private static boolean contains(final long[] table, final long fingerprint) {
+        for (var slot = slotOf(fingerprint); table[slot] != 0; slot = (slot + 1) & (TABLE_SIZE - 1)) {
+            if (table[slot] == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Put the fingerprint into the first free slot, starting from its own slot (the table is never full)
+     *
+     * @param table:       the hash table
+     * @param fingerprint: the fingerprint
+     */
+    private static void add(final long[] table, final long fingerprint) {
+        var slot = slotOf(fingerprint);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        table[slot] = fingerprint;
+    }
+
+    /**
+     * @param fingerprint: the fingerprint
+     * @return the slot from which the fingerprint is searched
+     */
+    static int slotOf(final long fingerprint) {
+        return (int) (fingerprint >>> 32) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Hash the sender port and the message id into 64 bits (FNV-1a, followed by a mixing step that spreads the bits)
+     *
+     * @param senderPort:  the port on which the sender listens
+     * @param messageUuid: the id given to the message by its sender
+     * @return the fingerprint, that is never 0
+     */
+    static long fingerprint(final int senderPort, final String messageUuid) {
+        var hash = 0xcbf29ce484222325L ^ senderPort;
+        for (var index = 0; index < messageUuid.length(); ++index) {
+            hash = (hash ^ messageUuid.charAt(index)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,134 @@
+package consensus.node.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Splits the bytes read from a connection into messages
+ * Every message is written as its length (an integer) followed by the message itself
+ * The bytes are read into a direct buffer that is taken from a pool when the connection is opened and given back when
+ * it is closed, and every message is handed over as a view of that buffer, so reading a message does not allocate or
+ * copy anything (the handler parses what it needs right from the buffer). Only a message that does not fit into the
+ * pooled buffer gets a heap buffer of its own, that is dropped after the message is read (the messages of the
+ * consensus are far below the size of the pooled buffer, so this is rare).
+ * A length that is not positive or that is larger than the maximum frame size means that the stream is corrupt, so the
+ * connection should be closed.
+ * The decoder is not thread safe, it should be used by one thread at a time.
+ */
+class FrameDecoder implements AutoCloseable {
+
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final int POOLED_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger freeBuffersCount = new AtomicInteger();
+
+    private final Consumer<ByteBuffer> frameHandler;
+    private final ByteBuffer pooledBuffer = acquireBuffer();
+    private ByteBuffer buffer = pooledBuffer;
+
+    /**
+     * @param frameHandler: the handler of every message read completely, which gets the read buffer with its position
+     *                      and limit set around the message (without the length); the buffer is reused after the
+     *                      handler returns, so the handler should neither keep it nor modify it
+     */
+    FrameDecoder(final Consumer<ByteBuffer> frameHandler) {
+        this.frameHandler = frameHandler;
+    }
+
+    /**
+     * Read the available bytes, and handle all the messages that were read completely
+     *
+     * @param connection: the connection
+     * @return false if the connection should be closed (the sender closed it, or it wrote an invalid length)
+     * @throws IOException if the connection could not be read
+     */
+    boolean read(final ReadableByteChannel connection) throws IOException {
+        if (connection.read(buffer) < 0) {
+            return false;
+        }
+
+        //handle all the complete messages from the buffer
+        buffer.flip();
+        var missingBytes = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            final var messageLength = buffer.getInt(buffer.position());
+            if (messageLength <= 0 || messageLength > MAX_FRAME_SIZE) {
+                System.out.println("FrameDecoder -> Invalid message length " + messageLength + ", closing the connection...");
+                return false;
+            }
+            if (buffer.remaining() < Integer.BYTES + messageLength) {
+                missingBytes = Integer.BYTES + messageLength - buffer.remaining();
+                break;
+            }
+
+            handleMessage(messageLength);
+        }
+        buffer.compact();
+
+        //make room for the message that was not read completely, or go back to the pooled buffer after a large message
+        if (missingBytes > buffer.remaining()) {
+            buffer = ByteBuffer.allocate(buffer.position() + missingBytes).put(buffer.flip());
+        } else if (buffer != pooledBuffer && buffer.position() <= pooledBuffer.capacity()) {
+            pooledBuffer.clear().put(buffer.flip());
+            buffer = pooledBuffer;
+        }
+        return true;
+    }
+
+    /**
+     * Give the pooled buffer back (the decoder should not be used after it is closed)
+     */
+    @Override
+    public void close() {
+        buffer = null;
+        releaseBuffer(pooledBuffer);
+    }
+
+    /**
+     * Handle the message that starts at the position of the buffer, and move the position after it
+     *
+     * @param messageLength: the length of the message
+     */
+    private void handleMessage(final int messageLength) {
+        final var limit = buffer.limit();
+        final var messageEnd = buffer.position() + Integer.BYTES + messageLength;
+        try {
+            buffer.position(buffer.position() + Integer.BYTES).limit(messageEnd);
+            frameHandler.accept(buffer);
+        } finally {
+            buffer.limit(limit).position(messageEnd);
+        }
+    }
+
+    /**
+     * @return a free buffer from the pool, or a new one if the pool is empty
+     */
+    private static ByteBuffer acquireBuffer() {
+        final var buffer = freeBuffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(POOLED_BUFFER_SIZE);
+        }
+        freeBuffersCount.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Put the buffer back into the pool (if the pool is full, the buffer is left to the garbage collector)
+     *
+     * @param buffer: the buffer
+     */
+    private static void releaseBuffer(final ByteBuffer buffer) {
+        if (freeBuffersCount.incrementAndGet() > MAX_POOLED_BUFFERS) {
+            freeBuffersCount.decrementAndGet();
+            return;
+        }
+        freeBuffers.offer(buffer);
+    }
+}
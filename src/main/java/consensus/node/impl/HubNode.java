@@ -1,77 +1,157 @@
 package consensus.node.impl;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import consensus.Paxos;
+import consensus.algotithms.FailureDetectorType;
 import consensus.algotithms.impl.AppLayer;
+import consensus.module.ExecutionMode;
+import consensus.module.IEventLoopGroup;
+import consensus.module.SystemState;
 import consensus.module.impl.ConsensusSystemModule;
+import consensus.module.impl.EventLoopGroup;
+import consensus.node.IInboundTransport;
 import consensus.node.INode;
+import utils.messages.InProcessTransport;
+import utils.messages.InboundMessage;
+import utils.messages.MessageLane;
 import utils.messages.MessagesHelper;
 import utils.messages.SendHelper;
+import utils.metrics.StageMetrics;
 
-import java.io.DataInputStream;
-import java.net.ServerSocket;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class HubNode implements INode {
 
+    private static final int ROUTES_COUNT = 8;
+    private static final int MAX_EARLY_SYSTEMS_PER_ROUTE = 8;
+    private static final int MAX_EARLY_MESSAGES_PER_SYSTEM = 1024;
+    private static final int MAX_CLOSED_SYSTEMS_PER_ROUTE = 128;
+
     private final int hubPort;
     private final int nodePort;
     private final String hubIp;
     private final String nodeOwner;
     private final int nodeOwnerIndex;
-    private final Map<String, ConsensusSystemModule> systemIdToSystem = new HashMap<>();
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final Map<String, ConsensusSystemModule> systemIdToSystem = new ConcurrentHashMap<>();
+    private final List<Route> routes = createRoutes();
+    private final LongAdder closedSystemsCount = new LongAdder();
+    private final long systemGracePeriod;
+    private final FailureDetectorType failureDetectorType;
+    private final IEventLoopGroup eventLoopGroup;
+    private final IInboundTransport inboundTransport;
+    private final StageMetrics systemStageMetrics = new StageMetrics("system", this::getQueuedMessagesCount);
+    private final Map<MessageLane, StageMetrics> laneStageMetrics = createLaneStageMetrics();
+    private final InProcessTransport inProcessTransport;
+    private final LivenessService livenessService;
 
+    /**
+     * The received messages pass through a pipeline: the readers of the inbound transport read them, decode their
+     * headers right from their read buffers and route them (parsing only the messages that are routed to a system),
+     * and the systems handle them (on the event loops)
+     * A reader routes a message before it reads the next ones, so a node that cannot keep up slows down its senders,
+     * instead of dropping their messages
+     *
+     * @param eventLoopThreads:    the number of threads on which the consensus systems run (0 for one per core)
+     * @param decoderThreads:      the number of threads on which the received messages are read and decoded in the
+     *                             pooled mode (0 for one per core), in the virtual mode every connection has its own
+     * @param systemGracePeriod:   how long a system keeps running after it decides (before it is closed), in milliseconds
+     * @param failureDetectorType: the failure detector that the systems use
+     * @param executionMode:       the kind of threads on which the systems and the inbound connections are handled
+     * @param inProcessTransport:  the transport through which the nodes of this process send messages to each other,
+     *                             or null if they communicate only through the network
+     */
     public HubNode(final String nodeOwner,
                    final int nodeOwnerIndex,
-                   final int nodePort, final String hubIp, final int hubPort) {
+                   final int nodePort, final String hubIp, final int hubPort,
+                   final int eventLoopThreads, final int decoderThreads, final long systemGracePeriod,
+                   final FailureDetectorType failureDetectorType, final ExecutionMode executionMode,
+                   final InProcessTransport inProcessTransport) {
         this.nodeOwner = nodeOwner;
         this.nodeOwnerIndex = nodeOwnerIndex;
         this.nodePort = nodePort;
         this.hubIp = hubIp;
         this.hubPort = hubPort;
+        this.systemGracePeriod = systemGracePeriod;
+        this.failureDetectorType = failureDetectorType;
+        this.inProcessTransport = inProcessTransport;
+        this.eventLoopGroup = new EventLoopGroup(nodeOwner + "-" + nodeOwnerIndex, eventLoopThreads, executionMode);
+        this.livenessService = new LivenessService(nodePort, eventLoopGroup);
+
+        //in the virtual mode every connection is read on its own thread, otherwise they are shared by a few selectors
+        this.inboundTransport = ExecutionMode.VIRTUAL.equals(executionMode)
+                ? new BlockingInboundTransport(nodePort, nodeOwner + "-" + nodeOwnerIndex)
+                : new SelectorInboundTransport(nodePort, nodeOwner + "-" + nodeOwnerIndex, decoderThreads);
     }
 
     @Override
-    @SuppressWarnings("InfiniteLoopStatement")
     public void start() {
         try {
-            //create a listening connection on the nodePort
-            var socket = new ServerSocket(nodePort);
-
-            //execute the infinitely read on another thread
-            executorService.submit(() -> {
-                //infinitely read loop
-                while (true) {
-                    try {
-                        //wait until a message is pushed on the network, and get the message stream
-                        final var messageByteStream = new DataInputStream(socket.accept().getInputStream());
-
-                        //get the message length
-                        final int messageLength = messageByteStream.readInt();
-                        if (messageLength <= 0) {
-                            continue;
-                        }
-
-                        //create a byte array for storing all the message bytes, and store all the message bytes into an array
-                        var byteArray = new byte[messageLength];
-                        messageByteStream.readFully(byteArray, 0, messageLength);
-
-                        //transform the bytes into a Paxos.Message and process the message
-                        processMessage(Paxos.Message.parseFrom(byteArray));
-                    } catch (final Exception ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            });
+            //listen for messages on the nodePort, and route every message on the thread that read it
+            inboundTransport.start(() -> this::processFrame);
 
+            //receive also the messages sent directly by the nodes of this process
+            if (inProcessTransport != null) {
+                inProcessTransport.register(nodePort, message -> processMessage(InboundMessage.of(message), null));
+            }
         } catch (final Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @return the metrics of the handling of the received messages by the systems, followed by the metrics of the lanes
+     * of the system queues (for the triggered and the received messages)
+     */
+    public List<StageMetrics> getStageMetrics() {
+        final var stageMetrics = new ArrayList<>(List.of(systemStageMetrics));
+        stageMetrics.addAll(laneStageMetrics.values());
+        return stageMetrics;
+    }
+
+    /**
+     * @return the number of heartbeat requests sent by the liveness service of the node
+     */
+    public long getSentHeartbeatsCount() {
+        return livenessService.getSentHeartbeatsCount();
+    }
+
+    /**
+     * @return the number of received messages that were dropped, because they were already received
+     */
+    public long getDuplicateMessagesCount() {
+        return routes.stream().mapToLong(route -> route.duplicateFilter.getHitsCount()).sum();
+    }
+
+    /**
+     * @return the number of received messages that were checked for duplicates and found to be new
+     */
+    public long getUniqueMessagesCount() {
+        return routes.stream().mapToLong(route -> route.duplicateFilter.getMissesCount()).sum();
+    }
+
+    /**
+     * @return the number of systems in every state (the closed systems are all the systems closed since the node started)
+     */
+    public Map<SystemState, Long> getSystemsCountByState() {
+        final var systemsCount = new EnumMap<SystemState, Long>(SystemState.class);
+        for (final var state : SystemState.values()) {
+            systemsCount.put(state, 0L);
+        }
+        systemIdToSystem.values().forEach(system -> systemsCount.merge(system.getState(), 1L, Long::sum));
+        systemsCount.merge(SystemState.CLOSED, closedSystemsCount.sum(), Long::sum);
+        return systemsCount;
+    }
+
     @Override
     public void register() {
         //create the app registration message
@@ -81,89 +161,243 @@ public class HubNode implements INode {
     }
 
 
+    /**
+     * Decode and process a message read from the network
+     * A message that cannot be decoded is skipped
+     *
+     * @param frame: the read buffer, with its position and limit set around the message (it is reused afterwards)
+     */
+    private void processFrame(final ByteBuffer frame) {
+        try {
+            processMessage(InboundMessage.parseHeader(frame), frame);
+        } catch (final IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Pass the heartbeats of the node liveness service to it, and route the other messages
+     * Every message proves to the liveness service that its sender is alive
+     * The heartbeats are handled without holding any routing lock, because the replies may be sent to a node of the
+     * same process (on this thread), and that node may send its own messages to this node at the same time
+     *
+     * @param receivedMessage: the received receivedMessage
+     * @param frame:           the buffer from which the message should be parsed, or null if it is already parsed
+     */
+    private void processMessage(final InboundMessage receivedMessage, final ByteBuffer frame) {
+        try {
+            livenessService.onTraffic(receivedMessage.getSenderListeningPort());
+            if (LivenessService.SYSTEM_ID.equals(receivedMessage.getSystemId())) {
+                parseMessage(receivedMessage, frame);
+                livenessService.onMessage(receivedMessage);
+                return;
+            }
+            routeMessage(receivedMessage, frame);
+        } catch (final InvalidProtocolBufferException ex) {
+            ex.printStackTrace();
+        }
+    }
+
     /**
      * Process the received receivedMessage
      * If the receivedMessage is app purpose then start a new instance of consensus module, otherwise, if other than the
      * AppPurpose receivedMessage is encountered, the receivedMessage is pushed into the correct queue (it's system queue), based on
      * it's system id
      *
+     * The messages are handled on several threads, so every system id belongs to one of a few routes, and the messages
+     * of the systems of a route are routed one at a time (while the other routes route their own messages)
+     * The messages are routed by their header, and they are parsed only once they are routed to a system
+     * A receivedMessage received a second time (for example written again after its connection was lost) is dropped
+     *
      * @param receivedMessage: the received receivedMessage
+     * @param frame:           the buffer from which the message should be parsed, or null if it is already parsed
+     * @throws InvalidProtocolBufferException if the message could not be parsed
      */
-    private void processMessage(final Paxos.Message receivedMessage) {
-
-        //get the network receivedMessage
-        final var networkMessage = receivedMessage.getNetworkMessage();
-        //get the receivedMessage from the network
-        final var innerMessage = networkMessage.getMessage();
+    private void routeMessage(final InboundMessage receivedMessage,
+                              final ByteBuffer frame) throws InvalidProtocolBufferException {
         //get the systemId
         final var systemId = receivedMessage.getSystemId();
+        final var route = routeOf(systemId);
 
-        //if the receivedMessage is AppPurpose than start a new consensus module
-        if (MessagesHelper.isAppPurpose(innerMessage)) {
-            onAppPurpose(innerMessage, systemId);
-            return;
-        }
+        synchronized (route) {
+            //drop the receivedMessage if it was already received (the messages without an id are always handled)
+            final var messageUuid = receivedMessage.getMessageUuid();
+            if (!messageUuid.isEmpty()
+                    && route.duplicateFilter.isDuplicate(receivedMessage.getSenderListeningPort(), messageUuid)) {
+                return;
+            }
+
+            //if the receivedMessage is AppPurpose than start a new consensus module
+            if (MessagesHelper.isAppPurpose(receivedMessage.getInnerType())) {
+                parseMessage(receivedMessage, frame);
+                onAppPurpose(receivedMessage.getMessage().getNetworkMessage().getMessage(), systemId, route);
+                return;
+            }
 
-        //handle other messages, by sending them back into the proper queue
-        onMessage(receivedMessage, systemId);
+            //handle other messages, by sending them back into the proper queue
+            onMessage(receivedMessage, frame, systemId, route);
+        }
     }
 
     /**
      * This method is used for handling the AppPurpose receivedMessage
+     * It should be called while holding the lock of the route of the system
      *
      * @param receivedMessage: the receivedMessage itself
+     * @param route:           the route of the system
      */
-    private void onAppPurpose(final Paxos.Message receivedMessage, final String systemId) {
+    private void onAppPurpose(final Paxos.Message receivedMessage, final String systemId, final Route route) {
         //crete a new instance of a consensus system
-        final var consensusModule = new ConsensusSystemModule(hubPort, nodePort, hubIp, systemId){{
-            init();
-        }};
-        //push the first layer
-        consensusModule.pushLayer(new AppLayer(consensusModule));
+        final var consensusModule = new ConsensusSystemModule(
+                hubPort, nodePort, hubIp, systemId, eventLoopGroup, systemStageMetrics, laneStageMetrics,
+                systemGracePeriod, this::onSystemClosed);
+        //push the first layer, before the system starts
+        consensusModule.pushLayer(new AppLayer(consensusModule, failureDetectorType, livenessService));
+        consensusModule.init();
         //add it to the map
         systemIdToSystem.put(systemId, consensusModule);
         //put the receivedMessage into the queue (trigger the action)
         consensusModule.trigger(receivedMessage);
+
+        //the messages that were received before the system started are put into the queue, after the AppPropose
+        final var earlyMessages = route.systemIdToEarlyMessages.remove(systemId);
+        if (earlyMessages != null) {
+            earlyMessages.forEach(consensusModule::deliver);
+        }
     }
 
 
+    /**
+     * Remove a closed system, and remember its id, so that the messages still received for it are dropped
+     *
+     * @param system: the system
+     */
+    private void onSystemClosed(final ConsensusSystemModule system) {
+        final var route = routeOf(system.getSystemId());
+        synchronized (route) {
+            if (systemIdToSystem.remove(system.getSystemId(), system)) {
+                route.closedSystemIds.add(system.getSystemId());
+                closedSystemsCount.increment();
+                livenessService.unsubscribe(system);
+            }
+        }
+    }
+
     /**
      * This is a callback for handling all the messages types received by the node, excepting the AppPurpose receivedMessage
-     * The messages, should be pushed back into the proper system queue (to the proper consensus system)
+     * The messages, should be pushed back into the proper system queue (to the proper consensus system), where the
+     * perfect link abstraction delivers them
+     * The messages of a system that did not start yet (its AppPurpose was not received) are kept until it starts, and
+     * the messages of a system that was closed are dropped
+     * It should be called while holding the lock of the route of the system
      *
      * @param receivedMessage: the receivedMessage
+     * @param frame:           the buffer from which the message should be parsed, or null if it is already parsed
      * @param systemId:        the id of the system
+     * @param route:           the route of the system
+     * @throws InvalidProtocolBufferException if the message could not be parsed
      */
-    private void onMessage(final Paxos.Message receivedMessage, final String systemId) {
-
-        //get the network receivedMessage
-        final var networkMessage = receivedMessage.getNetworkMessage();
-        //get the receivedMessage from the network
-        final var innerMessage = networkMessage.getMessage();
+    private void onMessage(final InboundMessage receivedMessage, final ByteBuffer frame,
+                           final String systemId, final Route route) throws InvalidProtocolBufferException {
 
         //get the system
-        var consSystem = systemIdToSystem.get(systemId);
+        final var consSystem = systemIdToSystem.get(systemId);
+        if (consSystem == null && route.closedSystemIds.contains(systemId)) {
+            return;
+        }
         if (consSystem == null) {
+            final var earlyMessages = route.systemIdToEarlyMessages.computeIfAbsent(systemId, id -> new ArrayList<>());
+            if (earlyMessages.size() < MAX_EARLY_MESSAGES_PER_SYSTEM) {
+                parseMessage(receivedMessage, frame);
+                earlyMessages.add(receivedMessage);
+            }
             return;
         }
 
-        //get the sender process, and if the process is not found, do nothing
-        final var senderProcessOptional = consSystem.identifySenderProcessByNetworkMessage(networkMessage);
-        if (senderProcessOptional.isEmpty()) {
-            return;
+        //deliver the network message so that the perfect link abstraction to deliver it
+        parseMessage(receivedMessage, frame);
+        consSystem.deliver(receivedMessage);
+    }
+
+    /**
+     * Parse the message from the buffer from which it was read, before the buffer is reused
+     *
+     * @param receivedMessage: the received message
+     * @param frame:           the buffer from which the message should be parsed, or null if it is already parsed
+     * @throws InvalidProtocolBufferException if the message could not be parsed
+     */
+    private static void parseMessage(final InboundMessage receivedMessage,
+                                     final ByteBuffer frame) throws InvalidProtocolBufferException {
+        if (frame != null) {
+            receivedMessage.parseMessage(frame);
         }
+    }
 
-        //get the sender process
-        final var senderProcess = senderProcessOptional.get();
+    /**
+     * @param systemId: the id of the system
+     * @return the route that routes the messages of the system
+     */
+    private Route routeOf(final String systemId) {
+        return routes.get(Math.floorMod(systemId.hashCode(), routes.size()));
+    }
 
-        //create PL_DELIVER receivedMessage
-        final var plDeliverMessage = MessagesHelper
-                .createPLDeliverMessage(senderProcess, innerMessage, receivedMessage.getAbstractionId());
+    /**
+     * @return the routes among which the system ids are split
+     */
+    private static List<Route> createRoutes() {
+        final var routes = new ArrayList<Route>();
+        for (var index = 0; index < ROUTES_COUNT; ++index) {
+            routes.add(new Route());
+        }
+        return routes;
+    }
 
-        //trigger the plDeliver message so that all the abstractions that listen for PL_DELIVER message type to be informed
-        consSystem.trigger(plDeliverMessage);
+    /**
+     * @return the metrics of every lane of the system queues (named system-control, system-protocol and system-bulk)
+     */
+    private Map<MessageLane, StageMetrics> createLaneStageMetrics() {
+        final var laneMetrics = new EnumMap<MessageLane, StageMetrics>(MessageLane.class);
+        for (final var lane : MessageLane.values()) {
+            final var name = "system-" + lane.name().toLowerCase();
+            laneMetrics.put(lane, new StageMetrics(name, () -> getQueuedMessagesCount(lane)));
+        }
+        return laneMetrics;
     }
 
-}
+    /**
+     * @param lane: the lane
+     * @return the number of messages that wait in the given lane of the queues of the systems
+     */
+    private long getQueuedMessagesCount(final MessageLane lane) {
+        return systemIdToSystem.values().stream().mapToLong(system -> system.getQueueSize(lane)).sum();
+    }
+
+    /**
+     * @return the number of received messages that wait in the queues of the systems
+     */
+    private long getQueuedMessagesCount() {
+        return systemIdToSystem.values().stream().mapToLong(ConsensusSystemModule::getInboundQueueSize).sum();
+    }
 
+    /**
+     * What a route remembers about its systems: the ids of the received messages, the messages of the systems that did
+     * not start yet, and the ids of the closed systems
+     * It should be used only while holding its lock
+     */
+    private static final class Route {
 
+        private final DuplicateFilter duplicateFilter = new DuplicateFilter();
+        private final Map<String, List<InboundMessage>> systemIdToEarlyMessages = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, List<InboundMessage>> eldest) {
+                return size() > MAX_EARLY_SYSTEMS_PER_ROUTE;
+            }
+        };
+        private final Set<String> closedSystemIds = Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_CLOSED_SYSTEMS_PER_ROUTE;
+            }
+        });
+    }
+}
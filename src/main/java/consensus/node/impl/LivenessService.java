@@ -0,0 +1,224 @@
+package consensus.node.impl;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import consensus.Paxos;
+import consensus.module.IConsensusModule;
+import consensus.module.IEventLoopGroup;
+import consensus.module.ITimer;
+import consensus.node.ILivenessService;
+import utils.messages.InboundMessage;
+import utils.messages.MessagesHelper;
+import utils.messages.SendHelper;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An eventually perfect failure detector shared by all the systems of a node.
+ * The systems that run on the same node usually have the same processes, so instead of every system exchanging its own
+ * heartbeats with every process, the node heartbeats every peer once per period, and it sends the EPFD_SUSPECT /
+ * EPFD_RESTORE messages into all the systems that subscribed to that peer. So the heartbeat traffic grows with the
+ * number of peers, not with the number of systems.
+ * It runs the same algorithm as the failure detector of a system: the peers that did not reply within the timeout are
+ * suspected, and the timeout grows every time a suspected peer replies. The peers are identified by their listening
+ * port (like the senders of all the network messages), and a peer is heartbeated only while some system subscribes to
+ * it. The current node is never heartbeated, it is always alive.
+ * The heartbeats are network messages with their own system id, so they are never routed to a system; only the nodes
+ * that run this service answer them, so it should be used only when all the nodes of the systems run it.
+ * Every message that the node receives from a peer proves that the peer is alive, not only its heartbeat replies, so
+ * the node reports the sender of every message that it receives (see onTraffic).
+ * The state is guarded by the service lock, and the messages are sent and triggered after the lock is released (a
+ * message sent to a node of the same process is handled on the sending thread, and it may come back to this node).
+ * Only the alive flags are set without the lock, by the received messages, so that the readers of the node do not
+ * wait for each other.
+ */
+public class LivenessService implements ILivenessService {
+
+    public static final String SYSTEM_ID = "node-liveness";
+
+    private static final String ABSTRACTION_ID = "epfd";
+    private static final int DELTA = 100;
+
+    private final int nodePort;
+    private final IEventLoopGroup eventLoopGroup;
+    private final Map<Integer, Peer> portToPeer = new ConcurrentHashMap<>();
+    private final AtomicLong sentHeartbeatsCount = new AtomicLong();
+    private int delay = DELTA;
+    private ITimer timeout;
+
+    /**
+     * @param nodePort:       the port on which the node listens
+     * @param eventLoopGroup: the event loop group of the node (on whose timers the heartbeats are sent)
+     */
+    public LivenessService(final int nodePort, final IEventLoopGroup eventLoopGroup) {
+        this.nodePort = nodePort;
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    @Override
+    public void subscribe(final Paxos.ProcessId process, final IConsensusModule system) {
+        if (process.getPort() == nodePort) {
+            return;
+        }
+
+        final boolean isSuspected;
+        synchronized (this) {
+            //a new peer is considered alive until its first timeout
+            final var peer = portToPeer.computeIfAbsent(process.getPort(), port -> new Peer(process));
+            peer.subscribers.put(system, process);
+            isSuspected = peer.isSuspected;
+
+            //the timer runs only while there are peers
+            if (timeout == null) {
+                timeout = eventLoopGroup.schedule(this::onTimeout, delay, TimeUnit.MILLISECONDS);
+            } else if (!timeout.isPending()) {
+                timeout.reschedule(delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (isSuspected) {
+            system.trigger(MessagesHelper.createEpfdSuspectMessage(process));
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(final IConsensusModule system) {
+        portToPeer.values().removeIf(peer -> peer.subscribers.remove(system) != null && peer.subscribers.isEmpty());
+    }
+
+    /**
+     * Handle a heartbeat message received by the node: reply to the requests, and mark the peers that replied as alive
+     *
+     * @param message: the message (its system id is the id of the service)
+     */
+    public void onMessage(final InboundMessage message) {
+        final var senderPort = message.getSenderListeningPort();
+        switch (message.getInnerType()) {
+            case EPFD_HEARTBEAT_REQUEST -> {
+                final String senderHost;
+                synchronized (this) {
+                    final var peer = portToPeer.get(senderPort);
+                    senderHost = peer != null ? peer.process.getHost() : getRequestHost(message);
+                }
+                if (senderHost != null) {
+                    send(MessagesHelper.createEpfdReply(ABSTRACTION_ID, Paxos.ProcessId.newBuilder()
+                            .setHost(senderHost)
+                            .setPort(senderPort)
+                            .build()));
+                }
+            }
+            case EPFD_HEARTBEAT_REPLY -> {
+                synchronized (this) {
+                    final var peer = portToPeer.get(senderPort);
+                    if (peer != null) {
+                        peer.isAlive = true;
+                    }
+                }
+            }
+            default -> {
+                //the service handles only heartbeats
+            }
+        }
+    }
+
+    /**
+     * Mark the peer as alive, because a message was received from it (if it is watched)
+     *
+     * @param senderPort: the listening port of the sender of the message
+     */
+    public void onTraffic(final int senderPort) {
+        final var peer = portToPeer.get(senderPort);
+        if (peer != null) {
+            peer.isAlive = true;
+        }
+    }
+
+    /**
+     * @return the number of heartbeat requests sent by the node
+     */
+    public long getSentHeartbeatsCount() {
+        return sentHeartbeatsCount.get();
+    }
+
+    /**
+     * Suspect the peers that did not reply, restore the suspected peers that replied, and send the next heartbeats
+     */
+    private void onTimeout() {
+        final var notifications = new ArrayList<Runnable>();
+        final List<Paxos.ProcessId> heartbeatedPeers;
+        synchronized (this) {
+            //a suspected peer that replied means that the timeout is too short
+            if (portToPeer.values().stream().anyMatch(peer -> peer.isAlive && peer.isSuspected)) {
+                delay += DELTA;
+            }
+
+            heartbeatedPeers = new ArrayList<>(portToPeer.size());
+            for (final var peer : portToPeer.values()) {
+                if (!peer.isAlive && !peer.isSuspected) {
+                    peer.isSuspected = true;
+                    peer.subscribers.forEach((system, process) ->
+                            notifications.add(() -> system.trigger(MessagesHelper.createEpfdSuspectMessage(process))));
+                } else if (peer.isAlive && peer.isSuspected) {
+                    peer.isSuspected = false;
+                    peer.subscribers.forEach((system, process) ->
+                            notifications.add(() -> system.trigger(MessagesHelper.createEpfdRestoreMessage(process))));
+                }
+                peer.isAlive = false;
+                heartbeatedPeers.add(peer.process);
+            }
+
+            //when no system watches any peer, the timer stops until the next subscription
+            if (!portToPeer.isEmpty()) {
+                timeout.reschedule(delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        notifications.forEach(Runnable::run);
+        heartbeatedPeers.forEach(peer -> send(MessagesHelper.createEpfdHeartBeatRequestMessage(ABSTRACTION_ID, peer)));
+        sentHeartbeatsCount.addAndGet(heartbeatedPeers.size());
+    }
+
+    /**
+     * @param message: the PL_SEND message, whose destination is a peer
+     */
+    private void send(final Paxos.Message message) {
+        final var destination = message.getPlSend().getDestination();
+        SendHelper.sendMessage(message.toBuilder().setSystemId(SYSTEM_ID).build(),
+                destination.getHost(), destination.getPort(), nodePort);
+    }
+
+    /**
+     * The sender host of a network message is the host to which it was sent (its sender does not know its own address),
+     * which is also the host of the sender when the nodes run on the same host
+     *
+     * @param message: the heartbeat request of a peer that no system of this node watches
+     * @return the host of the peer, or null if the message could not be parsed
+     */
+    private static String getRequestHost(final InboundMessage message) {
+        try {
+            return message.getMessage().getNetworkMessage().getSenderHost();
+        } catch (final InvalidProtocolBufferException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A watched peer, with the systems that subscribed to it (and the process instance of every system)
+     */
+    private static final class Peer {
+
+        private final Paxos.ProcessId process;
+        private final Map<IConsensusModule, Paxos.ProcessId> subscribers = new IdentityHashMap<>();
+        private volatile boolean isAlive = true;
+        private boolean isSuspected;
+
+        private Peer(final Paxos.ProcessId process) {
+            this.process = process;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package consensus.node.impl;
+
+import consensus.node.IInboundTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Accepts the connections on one thread, and reads them on a few threads (the readers), each of which reads all its
+ * connections using a non blocking selector, so a slow sender does not hold back the messages of the other senders.
+ * The accepted connections are given to the readers in turn, and a connection is read by the same reader until it is
+ * closed, so the messages written on a connection are handled in the order in which they were written.
+ * Every connection reuses its own buffer for all its messages (see FrameDecoder).
+ * The messages are passed to the handlers on the reader threads, and a reader reads its connections again only after
+ * the handlers return, so a node that cannot keep up slows down its senders.
+ */
+public class SelectorInboundTransport implements IInboundTransport {
+
+    private final int port;
+    private final String name;
+    private final int readersCount;
+
+    /**
+     * @param port:         the port on which the connections are accepted
+     * @param name:         the name of the transport (used for naming the threads)
+     * @param readersCount: the number of threads on which the connections are read, or 0 for one per available core
+     */
+    public SelectorInboundTransport(final int port, final String name, final int readersCount) {
+        this.port = port;
+        this.name = name;
+        this.readersCount = readersCount > 0 ? readersCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void start(final Supplier<Consumer<ByteBuffer>> frameHandlers) throws IOException {
+        //create the listening connection on the port
+        final var serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        //start the readers, and accept the connections on another thread
+        final var readers = new ArrayList<Reader>();
+        for (var readerIndex = 1; readerIndex <= readersCount; ++readerIndex) {
+            final var reader = new Reader(Selector.open(), frameHandlers);
+            new Thread(reader::selectLoop, name + "-reader-" + readerIndex).start();
+            readers.add(reader);
+        }
+        new Thread(() -> acceptLoop(serverChannel, readers), name + "-acceptor").start();
+    }
+
+    /**
+     * Accept the connections, and give them to the readers in turn
+     *
+     * @param serverChannel: the listening connection
+     * @param readers:       the readers
+     */
+    @SuppressWarnings("InfiniteLoopStatement")
+    private static void acceptLoop(final ServerSocketChannel serverChannel, final List<Reader> readers) {
+        var nextReader = 0;
+        while (true) {
+            try {
+                final var connection = serverChannel.accept();
+                connection.configureBlocking(false);
+                readers.get(nextReader).add(connection);
+                nextReader = (nextReader + 1) % readers.size();
+            } catch (final IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads the connections given to it on a selector
+     */
+    private static final class Reader {
+
+        private final Selector selector;
+        private final Supplier<Consumer<ByteBuffer>> frameHandlers;
+        private final Queue<SocketChannel> newConnections = new ConcurrentLinkedQueue<>();
+
+        /**
+         * @param selector:      the selector on which the connections are read
+         * @param frameHandlers: creates the handler of the messages of a connection
+         */
+        private Reader(final Selector selector, final Supplier<Consumer<ByteBuffer>> frameHandlers) {
+            this.selector = selector;
+            this.frameHandlers = frameHandlers;
+        }
+
+        /**
+         * Give a connection to the reader (it is registered on the reader thread, the next time it wakes up)
+         *
+         * @param connection: the non blocking connection
+         */
+        private void add(final SocketChannel connection) {
+            newConnections.add(connection);
+            selector.wakeup();
+        }
+
+        /**
+         * Wait until some connections can be read, and read them
+         */
+        @SuppressWarnings("InfiniteLoopStatement")
+        private void selectLoop() {
+            while (true) {
+                try {
+                    registerNewConnections();
+                    selector.select(key -> {
+                        if (key.isValid() && key.isReadable()) {
+                            readConnection(key);
+                        }
+                    });
+                } catch (final ClosedSelectorException e) {
+                    return;
+                } catch (final Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Register the connections given to the reader for reading
+         */
+        private void registerNewConnections() {
+            for (var connection = newConnections.poll(); connection != null; connection = newConnections.poll()) {
+                final var frameDecoder = new FrameDecoder(frameHandlers.get());
+                try {
+                    connection.register(selector, SelectionKey.OP_READ, frameDecoder);
+                } catch (final IOException ex) {
+                    ex.printStackTrace();
+                    close(connection, frameDecoder);
+                }
+            }
+        }
+
+        /**
+         * Read what is available on the connection, and close it if the sender closed it or if it cannot be read
+         *
+         * @param key: the key of the connection
+         */
+        private static void readConnection(final SelectionKey key) {
+            final var connection = (SocketChannel) key.channel();
+            final var frameDecoder = (FrameDecoder) key.attachment();
+            try {
+                if (frameDecoder.read(connection)) {
+                    return;
+                }
+            } catch (final IOException ex) {
+                ex.printStackTrace();
+            }
+
+            //the connection is no longer read
+            key.cancel();
+            close(connection, frameDecoder);
+        }
+
+        /**
+         * Close the connection, and give the buffer of its decoder back
+         */
+        private static void close(final SocketChannel connection, final FrameDecoder frameDecoder) {
+            frameDecoder.close();
+            try {
+                connection.close();
+            } catch (final IOException ignored) {
+                //the connection is dropped anyway
+            }
+        }
+    }
+}
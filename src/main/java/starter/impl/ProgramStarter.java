@@ -1,8 +1,12 @@
 package starter.impl;
 
+import consensus.algotithms.FailureDetectorType;
+import consensus.module.ExecutionMode;
 import consensus.node.impl.HubNode;
 import starter.IStarter;
 import utils.constants.IConstantsManager;
+import utils.messages.InProcessTransport;
+import utils.messages.SendHelper;
 
 public class ProgramStarter implements IStarter {
 
@@ -20,10 +24,35 @@ public class ProgramStarter implements IStarter {
         final int nodePort = (Integer) constantsManager.getConstantValue("nodePort").orElseGet(() -> 0);
         final int hubPort = (Integer) constantsManager.getConstantValue("hubPort").orElseGet(() -> 0);
         final int nodeNr = (Integer) constantsManager.getConstantValue("nodeNr").orElseGet(() -> 0);
+        final int eventLoopThreads = (Integer) constantsManager.getConstantValue("eventLoopThreads").orElseGet(() -> 0);
+        final int decoderThreads = (Integer) constantsManager.getConstantValue("decoderThreads").orElseGet(() -> 0);
+        final int systemGracePeriod = (Integer) constantsManager.getConstantValue("systemGracePeriod").orElseGet(() -> 0);
+        final var failureDetectorType = FailureDetectorType
+                .fromName((String) constantsManager.getConstantValue("failureDetector").orElseGet(() -> null));
+        final var executionMode = ExecutionMode
+                .fromName((String) constantsManager.getConstantValue("executionMode").orElseGet(() -> null));
+        final String connectionMode = (String) constantsManager.getConstantValue("connectionMode").orElseGet(() -> null);
+        final String transport = (String) constantsManager.getConstantValue("transport").orElseGet(() -> null);
+
+        //in the virtual mode the messages of every destination are written on a virtual thread
+        if (ExecutionMode.VIRTUAL.equals(executionMode)) {
+            SendHelper.setWriterThreadFactory(Thread.ofVirtual().factory());
+        }
+
+        //in the persistent mode a connection is kept for every destination and reused for all its messages
+        if ("persistent".equalsIgnoreCase(connectionMode)) {
+            SendHelper.enablePersistentConnections(hubIp, hubPort);
+        }
+
+        //in the in-process mode the nodes of this process send messages to each other without using the network
+        final var inProcessTransport = "in-process".equalsIgnoreCase(transport) ? new InProcessTransport() : null;
+        SendHelper.setLocalTransport(inProcessTransport);
 
         //create the nods and register them
         for (int i = 1; i <= nodeNr; i++) {
-            new HubNode(nodeOwnerName, i, nodePort + i, hubIp, hubPort) {{
+            new HubNode(nodeOwnerName, i, nodePort + i, hubIp, hubPort,
+                    eventLoopThreads, decoderThreads, systemGracePeriod, failureDetectorType, executionMode,
+                    inProcessTransport) {{
                 start();
                 register();
             }};
@@ -21,6 +21,27 @@ public class Constants implements Serializable  {
     @JsonProperty
     private int hubPort;
 
+    @JsonProperty
+    private int eventLoopThreads;
+
+    @JsonProperty
+    private int decoderThreads;
+
+    @JsonProperty
+    private int systemGracePeriod;
+
+    @JsonProperty
+    private String failureDetector;
+
+    @JsonProperty
+    private String executionMode;
+
+    @JsonProperty
+    private String connectionMode;
+
+    @JsonProperty
+    private String transport;
+
     public String getHubIp() {
         return hubIp;
     }
@@ -53,6 +74,62 @@ public class Constants implements Serializable  {
         this.hubPort = hubPort;
     }
 
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public void setEventLoopThreads(final int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    public int getDecoderThreads() {
+        return decoderThreads;
+    }
+
+    public void setDecoderThreads(final int decoderThreads) {
+        this.decoderThreads = decoderThreads;
+    }
+
+    public int getSystemGracePeriod() {
+        return systemGracePeriod;
+    }
+
+    public void setSystemGracePeriod(final int systemGracePeriod) {
+        this.systemGracePeriod = systemGracePeriod;
+    }
+
+    public String getFailureDetector() {
+        return failureDetector;
+    }
+
+    public void setFailureDetector(final String failureDetector) {
+        this.failureDetector = failureDetector;
+    }
+
+    public String getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(final String executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public String getConnectionMode() {
+        return connectionMode;
+    }
+
+    public void setConnectionMode(final String connectionMode) {
+        this.connectionMode = connectionMode;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(final String transport) {
+        this.transport = transport;
+    }
+
     public int getNodeNr() {
         return nodeNr;
     }
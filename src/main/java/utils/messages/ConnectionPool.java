@@ -0,0 +1,323 @@
+package utils.messages;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a long-lived connection for every destination (host, port), and writes all the frames for that destination
+ * on it. The frames that are written together are gathered into a single write.
+ * If the connection cannot be opened, the destination is not contacted again until a backoff delay (that doubles with
+ * every failure) passes. The frames that the pool does not write (meanwhile, or because a write failed) are left to the
+ * caller, which writes them one per connection, so no frame is dropped by the pool.
+ * Some destinations (like the hub) read only one frame per connection, so the pool does not handle them. They are
+ * either known in advance, or found by writing a single frame on the first connection, and checking a while later if
+ * the destination closed it. Until then the pool writes nothing else on that connection, so no frame is lost.
+ * The state of an open connection is checked only when it was not used for a while, because the check costs several
+ * system calls.
+ * The connections that are not used for a while are closed.
+ */
+class ConnectionPool {
+
+    private static final long MIN_BACKOFF = 50;
+    private static final long MAX_BACKOFF = 2000;
+    private static final long CONFIRM_DELAY = 100;
+    private static final long PROBE_IDLE_TIME = 1000;
+    private static final long IDLE_TIMEOUT = 30000;
+
+    private final Map<String, PooledConnection> connections = new ConcurrentHashMap<>();
+    private final Set<String> singleFrameDestinations = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService evictionService = Executors.newSingleThreadScheduledExecutor(task -> {
+        final var thread = new Thread(task, "connection-pool-eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ConnectionPool() {
+        evictionService.scheduleWithFixedDelay(this::evictIdleConnections, IDLE_TIMEOUT, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Mark the destination as one that reads only one frame per connection
+     *
+     * @param destinationAddress: the destination address
+     * @param destinationPort:    the destination port
+     */
+    void addSingleFrameDestination(final String destinationAddress, final int destinationPort) {
+        singleFrameDestinations.add(destinationAddress + ":" + destinationPort);
+    }
+
+    /**
+     * Write the frames on the connection of the destination
+     * The destinations that were not yet seen keeping a connection open get only the first frame on a new connection,
+     * and nothing else until they are checked
+     *
+     * @param frames:             the frames
+     * @param destinationAddress: the destination address
+     * @param destinationPort:    the destination port
+     * @return the number of frames (from the beginning) that were written, the others should be written one per
+     * connection (all of them if the connection failed, or the destination is unreachable during the backoff)
+     */
+    int write(final List<OutboundFrame> frames,
+              final String destinationAddress, final int destinationPort) {
+        final var destination = destinationAddress + ":" + destinationPort;
+        while (true) {
+            if (singleFrameDestinations.contains(destination)) {
+                return 0;
+            }
+
+            final var connection = connections
+                    .computeIfAbsent(destination, key -> new PooledConnection(destinationAddress, destinationPort));
+
+            synchronized (connection) {
+                //the connection was evicted after it was looked up, so look up its replacement
+                if (connection.evicted) {
+                    continue;
+                }
+
+                try {
+                    return write(connection, destination, frames);
+                } catch (final IOException e) {
+                    //the state of the connection could not be checked, so nothing was written
+                    connection.onFailure();
+                    return 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the frames on the connection, depending on what is known about the destination
+     * It should be called while holding the lock of the connection
+     *
+     * @param connection:  the connection
+     * @param destination: the destination (host and port)
+     * @param frames:      the frames
+     * @return the number of frames (from the beginning) that were written
+     * @throws IOException if the state of the connection could not be checked
+     */
+    private int write(final PooledConnection connection, final String destination,
+                      final List<OutboundFrame> frames) throws IOException {
+        final var now = System.currentTimeMillis();
+        if (!connection.confirmed) {
+            //write the first frame on a new connection, and wait to see if the destination keeps it open
+            if (!connection.isOpened()) {
+                return connection.write(frames.subList(0, 1));
+            }
+            if (now - connection.openedAt < CONFIRM_DELAY) {
+                return 0;
+            }
+
+            //if the destination closed the connection after the first frame, it does not accept more
+            if (connection.isClosedByDestination()) {
+                connection.evict();
+                connections.remove(destination, connection);
+                singleFrameDestinations.add(destination);
+                return 0;
+            }
+            connection.confirmed = true;
+        } else if (now - connection.lastUsedAt >= PROBE_IDLE_TIME && connection.isClosedByDestination()) {
+            //the connection was closed meanwhile (the destination restarted), so open it again
+            connection.close();
+        }
+
+        return connection.write(frames);
+    }
+
+    /**
+     * Close the connections that were not used during the idle timeout
+     * The connections are closed while holding their locks, so no writer uses them meanwhile, and the writers that
+     * looked them up before find that they were evicted
+     */
+    private void evictIdleConnections() {
+        final var now = System.currentTimeMillis();
+        connections.forEach((destination, connection) -> {
+            synchronized (connection) {
+                if (now - connection.lastUsedAt < IDLE_TIMEOUT) {
+                    return;
+                }
+                connection.evict();
+                connections.remove(destination, connection);
+            }
+        });
+    }
+
+    /**
+     * A connection to a destination, that is reopened when it is lost
+     * All the methods should be called while holding the lock of the connection
+     */
+    private static class PooledConnection {
+
+        private final InetSocketAddress address;
+        private final ByteBuffer probeBuffer = ByteBuffer.allocate(1);
+
+        private SocketChannel channel;
+        private boolean confirmed;
+        private boolean evicted;
+        private long openedAt;
+        private long lastUsedAt = System.currentTimeMillis();
+        private long backoff;
+        private long nextAttemptAt;
+
+        private PooledConnection(final String destinationAddress, final int destinationPort) {
+            this.address = new InetSocketAddress(destinationAddress, destinationPort);
+        }
+
+        /**
+         * Write the frames, opening the connection if needed
+         * If the connection is lost, it is reopened once and the frames that were not written completely are written
+         * again. If that fails too, the next attempt is delayed by the backoff
+         *
+         * @param frames: the frames
+         * @return the number of frames (from the beginning) that were written completely
+         */
+        private int write(final List<OutboundFrame> frames) {
+            lastUsedAt = System.currentTimeMillis();
+
+            //during the backoff the destination is considered unreachable
+            if (channel == null && lastUsedAt < nextAttemptAt) {
+                return 0;
+            }
+
+            final var buffers = toByteBuffers(frames);
+            try {
+                writeFully(buffers);
+                return frames.size();
+            } catch (final IOException e) {
+                //the connection could have been broken since the last write, so try once with a new one
+                close();
+            }
+
+            final var writtenFrames = countWrittenFrames(buffers);
+            final var remainingBuffers = toByteBuffers(frames.subList(writtenFrames, frames.size()));
+            try {
+                writeFully(remainingBuffers);
+                return frames.size();
+            } catch (final IOException e) {
+                onFailure();
+                return writtenFrames + countWrittenFrames(remainingBuffers);
+            }
+        }
+
+        /**
+         * Open the connection (if it is not opened) and write all the buffers on it
+         *
+         * @param buffers: the buffers of the frames
+         * @throws IOException if the buffers could not be written
+         */
+        private void writeFully(final ByteBuffer[] buffers) throws IOException {
+            if (channel == null) {
+                channel = SocketChannel.open(address);
+                channel.socket().setTcpNoDelay(true);
+                openedAt = System.currentTimeMillis();
+                backoff = 0;
+            }
+
+            //write all the frames with a single gathering write (if the socket buffer has room for them)
+            var remaining = 0L;
+            for (final var buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+
+        /**
+         * @return true if the connection is opened
+         */
+        private boolean isOpened() {
+            return channel != null;
+        }
+
+        /**
+         * @param frames: the frames
+         * @return the buffers of all the frames, in order
+         */
+        private static ByteBuffer[] toByteBuffers(final List<OutboundFrame> frames) {
+            final var buffers = new ByteBuffer[frames.size() * OutboundFrame.BUFFERS_COUNT];
+            for (var frame = 0; frame < frames.size(); ++frame) {
+                System.arraycopy(frames.get(frame).toByteBuffers(), 0,
+                        buffers, frame * OutboundFrame.BUFFERS_COUNT, OutboundFrame.BUFFERS_COUNT);
+            }
+            return buffers;
+        }
+
+        /**
+         * @param buffers: the buffers of the frames
+         * @return the number of frames (from the beginning) whose buffers were written completely
+         */
+        private static int countWrittenFrames(final ByteBuffer[] buffers) {
+            //the buffers are written in order, so the frames before the first buffer with remaining bytes are written
+            var buffer = 0;
+            while (buffer < buffers.length && !buffers[buffer].hasRemaining()) {
+                ++buffer;
+            }
+            return buffer / OutboundFrame.BUFFERS_COUNT;
+        }
+
+        /**
+         * Check, without blocking, if the destination closed the connection
+         * The destinations never write on these connections, so reading the end of stream means that they are closed
+         *
+         * @return true if the connection is closed by the destination
+         * @throws IOException if the state of the connection could not be read
+         */
+        private boolean isClosedByDestination() throws IOException {
+            if (channel == null) {
+                return false;
+            }
+
+            channel.configureBlocking(false);
+            try {
+                probeBuffer.clear();
+                return channel.read(probeBuffer) < 0;
+            } catch (final IOException e) {
+                //a reset connection is closed as well
+                return true;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        }
+
+        /**
+         * Close the connection and delay the next attempt to open it
+         */
+        private void onFailure() {
+            close();
+            backoff = backoff == 0 ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+            nextAttemptAt = System.currentTimeMillis() + backoff;
+        }
+
+        /**
+         * Close the connection for good (the pool no longer uses it)
+         */
+        private void evict() {
+            close();
+            evicted = true;
+        }
+
+        /**
+         * Close the connection
+         */
+        private void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (final IOException ignored) {
+                //the connection is dropped anyway
+            }
+            channel = null;
+        }
+    }
+}
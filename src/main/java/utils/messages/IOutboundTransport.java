@@ -0,0 +1,17 @@
+package utils.messages;
+
+import consensus.Paxos;
+
+public interface IOutboundTransport {
+
+    /**
+     * Send the message to the destination, if the destination can be reached through this transport
+     *
+     * @param networkMessage:     the NETWORK_MESSAGE that wraps the sent message
+     * @param destinationAddress: the destination address
+     * @param destinationPort:    the destination port
+     * @return true if the message was sent, false if the destination cannot be reached through this transport (so the
+     * message should be sent through another transport)
+     */
+    boolean send(final Paxos.Message networkMessage, final String destinationAddress, final int destinationPort);
+}
@@ -0,0 +1,60 @@
+package utils.messages;
+
+import consensus.Paxos;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the messages between the nodes that run in the same process, without serializing them and without
+ * using the network.
+ * Every node registers the handler of its received messages under its listening port, and a message whose destination
+ * is a local address and a registered port is passed directly to that handler (on the sending thread).
+ * The messages for the other destinations (like the hub or the nodes from other processes) are not handled.
+ */
+public class InProcessTransport implements IOutboundTransport {
+
+    private final Map<Integer, Consumer<Paxos.Message>> portToMessageHandler = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> addressToIsLocal = new ConcurrentHashMap<>();
+
+    /**
+     * Register the node that listens on the given port
+     *
+     * @param port:           the listening port of the node
+     * @param messageHandler: the handler of the messages received by the node
+     */
+    public void register(final int port, final Consumer<Paxos.Message> messageHandler) {
+        portToMessageHandler.put(port, messageHandler);
+    }
+
+    @Override
+    public boolean send(final Paxos.Message networkMessage, final String destinationAddress, final int destinationPort) {
+        //check if the destination is a node of this process
+        final var messageHandler = portToMessageHandler.get(destinationPort);
+        if (messageHandler == null || !addressToIsLocal.computeIfAbsent(destinationAddress, InProcessTransport::isLocal)) {
+            return false;
+        }
+
+        messageHandler.accept(networkMessage);
+        return true;
+    }
+
+    /**
+     * @param address: the address
+     * @return true if the address belongs to this machine, false otherwise (or if it cannot be resolved)
+     */
+    private static boolean isLocal(final String address) {
+        try {
+            final var inetAddress = InetAddress.getByName(address);
+            return inetAddress.isLoopbackAddress()
+                    || inetAddress.isAnyLocalAddress()
+                    || NetworkInterface.getByInetAddress(inetAddress) != null;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package utils.messages;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import consensus.Paxos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A message received by a node, whose routing fields (the message uuid, the system id, the abstraction id, the sender
+ * listening port and the type of the wrapped message) are read without parsing the whole message.
+ * The header of a message received from the network is read right from the buffer into which it was read, and the
+ * message is parsed from the same buffer only if it is routed to a system, so the messages that are dropped are never
+ * parsed, and the bytes of a message are never copied. A message whose header is read from an array keeps the array,
+ * and it is parsed only when it is first needed.
+ * It is not thread safe, it should be handed over to one thread at a time.
+ */
+public final class InboundMessage {
+
+    private final byte[] bytes;
+    private final String messageUuid;
+    private final String systemId;
+    private final String abstractionId;
+    private final int senderListeningPort;
+    private final Paxos.Message.Type innerType;
+    private Paxos.Message message;
+    private long queuedAt;
+
+    private InboundMessage(final byte[] bytes,
+                           final String messageUuid,
+                           final String systemId,
+                           final String abstractionId,
+                           final int senderListeningPort,
+                           final Paxos.Message.Type innerType,
+                           final Paxos.Message message) {
+        this.bytes = bytes;
+        this.messageUuid = messageUuid;
+        this.systemId = systemId;
+        this.abstractionId = abstractionId;
+        this.senderListeningPort = senderListeningPort;
+        this.innerType = innerType;
+        this.message = message;
+    }
+
+    /**
+     * Read the routing fields from the bytes of a message (the fields of the wrapped message, excepting its type, are
+     * skipped)
+     *
+     * @param bytes: the bytes of the message (they should not be modified afterwards)
+     * @return the inbound message, which is parsed from the bytes when it is first requested
+     * @throws IOException if the bytes are not a valid message
+     */
+    public static InboundMessage parseHeader(final byte[] bytes) throws IOException {
+        return readHeader(CodedInputStream.newInstance(bytes), bytes);
+    }
+
+    /**
+     * Read the routing fields from a message, right from the buffer into which it was read (the position and the limit
+     * of the buffer are not changed)
+     * The buffer is not kept, so parseMessage should be called with the same buffer before the message is requested
+     *
+     * @param frame: the buffer, with its position and limit set around the message
+     * @return the inbound message
+     * @throws IOException if the bytes are not a valid message
+     */
+    public static InboundMessage parseHeader(final ByteBuffer frame) throws IOException {
+        return readHeader(CodedInputStream.newInstance(frame), null);
+    }
+
+    /**
+     * Read the routing fields of a message
+     *
+     * @param input: the input, positioned at the beginning of the message
+     * @param bytes: the bytes from which the message is parsed when it is first requested, or null
+     * @return the inbound message
+     * @throws IOException if the input is not a valid message
+     */
+    private static InboundMessage readHeader(final CodedInputStream input, final byte[] bytes) throws IOException {
+        var messageUuid = "";
+        var systemId = "";
+        var abstractionId = "";
+        var senderListeningPort = 0;
+        var innerType = Paxos.Message.Type.NETWORK_MESSAGE;
+
+        for (var tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Paxos.Message.MESSAGEUUID_FIELD_NUMBER -> messageUuid = input.readStringRequireUtf8();
+                case Paxos.Message.ABSTRACTIONID_FIELD_NUMBER -> abstractionId = input.readStringRequireUtf8();
+                case Paxos.Message.SYSTEMID_FIELD_NUMBER -> systemId = input.readStringRequireUtf8();
+                case Paxos.Message.NETWORKMESSAGE_FIELD_NUMBER -> {
+                    //read the sender port and the type of the wrapped message from the network message
+                    final var networkMessageLimit = input.pushLimit(input.readRawVarint32());
+                    for (var innerTag = input.readTag(); innerTag != 0; innerTag = input.readTag()) {
+                        switch (WireFormat.getTagFieldNumber(innerTag)) {
+                            case Paxos.NetworkMessage.SENDERLISTENINGPORT_FIELD_NUMBER ->
+                                    senderListeningPort = input.readInt32();
+                            case Paxos.NetworkMessage.MESSAGE_FIELD_NUMBER -> innerType = readType(input);
+                            default -> input.skipField(innerTag);
+                        }
+                    }
+                    input.popLimit(networkMessageLimit);
+                }
+                default -> input.skipField(tag);
+            }
+        }
+
+        return new InboundMessage(bytes, messageUuid, systemId, abstractionId, senderListeningPort, innerType, null);
+    }
+
+    /**
+     * @param message: a message that is already parsed (for example one received from a node of the same process)
+     * @return the inbound message
+     */
+    public static InboundMessage of(final Paxos.Message message) {
+        final var networkMessage = message.getNetworkMessage();
+        return new InboundMessage(
+                null,
+                message.getMessageUuid(),
+                message.getSystemId(),
+                message.getAbstractionId(),
+                networkMessage.getSenderListeningPort(),
+                networkMessage.getMessage().getType(),
+                message);
+    }
+
+    /**
+     * Parse the whole message from the buffer from which its header was read (before the buffer is reused)
+     * The parsed message does not keep any reference to the buffer
+     *
+     * @param frame: the buffer, with its position and limit set around the message (they are not changed)
+     * @throws InvalidProtocolBufferException if the message could not be parsed
+     */
+    public void parseMessage(final ByteBuffer frame) throws InvalidProtocolBufferException {
+        message = Paxos.Message.parseFrom(frame);
+    }
+
+    /**
+     * @return the message (if it was neither parsed from its buffer nor given, it is parsed from its bytes the first
+     * time it is requested)
+     * @throws InvalidProtocolBufferException if the message could not be parsed
+     */
+    public Paxos.Message getMessage() throws InvalidProtocolBufferException {
+        if (message == null) {
+            message = Paxos.Message.parseFrom(bytes);
+        }
+        return message;
+    }
+
+    /**
+     * @param queuedAt: the moment (System.nanoTime) when the message was put into the queue of its system
+     */
+    public void setQueuedAt(final long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
+    /**
+     * @return the moment (System.nanoTime) when the message was put into the queue of its system
+     */
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    /**
+     * @return the unique id given to the message by its sender (empty if the sender did not set it)
+     */
+    public String getMessageUuid() {
+        return messageUuid;
+    }
+
+    /**
+     * @return the id of the system to which the message belongs
+     */
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * @return the id of the abstraction to which the message belongs
+     */
+    public String getAbstractionId() {
+        return abstractionId;
+    }
+
+    /**
+     * @return the port on which the sender listens
+     */
+    public int getSenderListeningPort() {
+        return senderListeningPort;
+    }
+
+    /**
+     * @return the type of the message wrapped into the network message
+     */
+    public Paxos.Message.Type getInnerType() {
+        return innerType;
+    }
+
+    /**
+     * Read the type of the wrapped message, and skip the rest of it
+     *
+     * @param input: the input, positioned on the length of the wrapped message
+     * @return the type of the wrapped message
+     * @throws IOException if the wrapped message is not valid
+     */
+    private static Paxos.Message.Type readType(final CodedInputStream input) throws IOException {
+        final var messageLimit = input.pushLimit(input.readRawVarint32());
+        var typeNumber = Paxos.Message.Type.NETWORK_MESSAGE_VALUE;
+        for (var tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            //the type is the first field, so the rest of the message is skipped once it is read
+            if (WireFormat.getTagFieldNumber(tag) == Paxos.Message.TYPE_FIELD_NUMBER) {
+                typeNumber = input.readEnum();
+                input.skipRawBytes(input.getBytesUntilLimit());
+                break;
+            }
+            input.skipField(tag);
+        }
+        input.popLimit(messageLimit);
+
+        final var type = Paxos.Message.Type.forNumber(typeNumber);
+        return type == null ? Paxos.Message.Type.UNRECOGNIZED : type;
+    }
+}
@@ -0,0 +1,47 @@
+package utils.messages;
+
+import consensus.Paxos;
+
+/**
+ * The lanes into which the messages are split, in the queues of the systems and in the outbound queues, so that the
+ * messages of a lane never wait behind the messages of a lower priority lane.
+ * The failure detector messages are in the control lane, so a healthy process is not suspected only because its
+ * heartbeats wait behind a backlog of protocol messages. The protocol messages that carry values (the states, the
+ * writes and the decisions of the epochs) are in the bulk lane, and the rest are in the protocol lane.
+ * The messages sent between processes (PL_SEND, PL_DELIVER, BEB_BROADCAST, BEB_DELIVER and NETWORK_MESSAGE) are in the
+ * lane of the message that they carry. Only these messages and the failure detector events are moved ahead: their
+ * order is not guaranteed by the links anyway, while the order of the other events of a system is kept.
+ */
+public enum MessageLane {
+    CONTROL,
+    PROTOCOL,
+    BULK;
+
+    /**
+     * @param message: the message
+     * @return the lane of the message
+     */
+    public static MessageLane of(final Paxos.Message message) {
+        return switch (message.getType()) {
+            case PL_SEND -> ofCarried(message.getPlSend().getMessage().getType());
+            case PL_DELIVER -> ofCarried(message.getPlDeliver().getMessage().getType());
+            case BEB_BROADCAST -> ofCarried(message.getBebBroadcast().getMessage().getType());
+            case BEB_DELIVER -> ofCarried(message.getBebDeliver().getMessage().getType());
+            case NETWORK_MESSAGE -> ofCarried(message.getNetworkMessage().getMessage().getType());
+            case EPFD_TIMEOUT, EPFD_SUSPECT, EPFD_RESTORE -> CONTROL;
+            default -> PROTOCOL;
+        };
+    }
+
+    /**
+     * @param carriedType: the type of the message carried between processes
+     * @return the lane of the message
+     */
+    public static MessageLane ofCarried(final Paxos.Message.Type carriedType) {
+        return switch (carriedType) {
+            case EPFD_HEARTBEAT_REQUEST, EPFD_HEARTBEAT_REPLY -> CONTROL;
+            case EP_STATE_, EP_WRITE_, EP_DECIDED_ -> BULK;
+            default -> PROTOCOL;
+        };
+    }
+}
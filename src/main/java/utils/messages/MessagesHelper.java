@@ -2,10 +2,15 @@ package utils.messages;
 
 import consensus.Paxos;
 
+import java.util.OptionalInt;
+
 import static consensus.Paxos.Message.Type.*;
 import static consensus.Paxos.Message.Type.APP_PROPOSE;
 
 public class MessagesHelper {
+
+    private static final String EP_ABSTRACTION_ID_PREFIX = "ep";
+
     /**
      * Create an appRegistration message
      *
@@ -46,16 +51,18 @@ public class MessagesHelper {
     /**
      * Create the EpStateMessage
      *
+     * @param abstractionId:   the id of the epoch consensus instance
      * @param valueTimestamp:  the timestamp of the value
      * @param messageReceiver: the receiver of the message
      * @param value:           the value of the value
      * @return a fully configured instance of the EpStateMessage
      */
-    public static Paxos.Message createEpStateMessage(final int valueTimestamp,
+    public static Paxos.Message createEpStateMessage(final String abstractionId, final int valueTimestamp,
                                                      final Paxos.ProcessId messageReceiver, final Paxos.Value value) {
 
         //create the epState message
         final var epStateMessage = Paxos.Message.newBuilder()
+                .setAbstractionId(abstractionId)
                 .setType(EP_STATE_)
                 .setEpState(Paxos.EpState_.newBuilder()
                         .setValueTimestamp(valueTimestamp)
@@ -76,15 +83,17 @@ public class MessagesHelper {
     /**
      * Create the EpAcceptMessage
      *
-     * @param destination: the destination of the message
+     * @param abstractionId: the id of the epoch consensus instance
+     * @param destination:   the destination of the message
      * @return a fully configured EP_Accept message
      */
-    public static Paxos.Message createEpAcceptMessage(final Paxos.ProcessId destination) {
+    public static Paxos.Message createEpAcceptMessage(final String abstractionId, final Paxos.ProcessId destination) {
         return Paxos.Message.newBuilder()
                 .setType(PL_SEND)
                 .setPlSend(Paxos.PlSend.newBuilder()
                         .setDestination(destination)
                         .setMessage(Paxos.Message.newBuilder()
+                                .setAbstractionId(abstractionId)
                                 .setType(EP_ACCEPT_)
                                 .setEpAccept(Paxos.EpAccept_.newBuilder()
                                         .build())
@@ -96,13 +105,15 @@ public class MessagesHelper {
     /**
      * This method is used for creating EpPurposeRead message
      *
+     * @param abstractionId: the id of the epoch consensus instance
      * @return a fully configured EpReadMessage
      */
-    public static Paxos.Message createEpPurposeReadMessage() {
+    public static Paxos.Message createEpPurposeReadMessage(final String abstractionId) {
         return Paxos.Message.newBuilder()
                 .setType(BEB_BROADCAST)
                 .setBebBroadcast(Paxos.BebBroadcast.newBuilder()
                         .setMessage(Paxos.Message.newBuilder()
+                                .setAbstractionId(abstractionId)
                                 .setType(EP_READ_)
                                 .setEpRead(Paxos.EpRead_.newBuilder()
                                         .build())
@@ -131,14 +142,16 @@ public class MessagesHelper {
     /**
      * Create the EP_WRITE message
      *
-     * @param value: the value that needs to be written
+     * @param abstractionId: the id of the epoch consensus instance
+     * @param value:         the value that needs to be written
      * @return a fully configured message
      */
-    public static Paxos.Message createEpWriteMessage(final Paxos.Value value) {
+    public static Paxos.Message createEpWriteMessage(final String abstractionId, final Paxos.Value value) {
         return Paxos.Message.newBuilder()
                 .setType(BEB_BROADCAST)
                 .setBebBroadcast(Paxos.BebBroadcast.newBuilder()
                         .setMessage(Paxos.Message.newBuilder()
+                                .setAbstractionId(abstractionId)
                                 .setType(EP_WRITE_)
                                 .setEpWrite(Paxos.EpWrite_.newBuilder()
                                         .setValue(value)
@@ -151,14 +164,16 @@ public class MessagesHelper {
     /**
      * Create an EpDecidedMessage
      *
-     * @param decidedValue: the value on which the process is decided
+     * @param abstractionId: the id of the epoch consensus instance
+     * @param decidedValue:  the value on which the process is decided
      * @return a fully configured value
      */
-    public static Paxos.Message createEpDecidedMessage(final Paxos.Value decidedValue) {
+    public static Paxos.Message createEpDecidedMessage(final String abstractionId, final Paxos.Value decidedValue) {
         return Paxos.Message.newBuilder()
                 .setType(BEB_BROADCAST)
                 .setBebBroadcast(Paxos.BebBroadcast.newBuilder()
                         .setMessage(Paxos.Message.newBuilder()
+                                .setAbstractionId(abstractionId)
                                 .setType(EP_DECIDED_)
                                 .setEpDecided(Paxos.EpDecided_.newBuilder()
                                         .setValue(decidedValue)
@@ -237,11 +252,13 @@ public class MessagesHelper {
     /**
      * Crete an instance of EP_ABORT message
      *
+     * @param abstractionId: the id of the epoch consensus instance that is aborted
      * @return a fully configured instance of epAbortMessage
      */
-    public static Paxos.Message createEpAbortMessage() {
+    public static Paxos.Message createEpAbortMessage(final String abstractionId) {
         return Paxos.Message.newBuilder()
                 .setType(EP_ABORT)
+                .setAbstractionId(abstractionId)
                 .setEpAbort(Paxos.EpAbort.newBuilder()
                         .build())
                 .build();
@@ -467,6 +484,41 @@ public class MessagesHelper {
                 .build();
     }
 
+    /**
+     * Create the abstraction id of an epoch consensus instance
+     *
+     * @param ets: the timestamp of the epoch
+     * @return the abstraction id (ep0, ep1, ...)
+     */
+    public static String createEpAbstractionId(final int ets) {
+        return EP_ABSTRACTION_ID_PREFIX + ets;
+    }
+
+    /**
+     * Get the timestamp of the epoch from the abstraction id of a message sent by an epoch consensus instance
+     *
+     * @param message: the message
+     * @return the epoch timestamp or OptionalInt.empty() if the message is not tagged with an epoch
+     */
+    public static OptionalInt getEpochTimestamp(final Paxos.Message message) {
+        final var abstractionId = message.getAbstractionId();
+
+        //the abstraction id should be the prefix followed by the timestamp, in ascii digits (epfd must not be taken into
+        //consideration, and any other format is treated as a message that is not tagged with an epoch)
+        final var timestamp = abstractionId.startsWith(EP_ABSTRACTION_ID_PREFIX)
+                ? abstractionId.substring(EP_ABSTRACTION_ID_PREFIX.length()) : "";
+        if (timestamp.isEmpty() || !timestamp.chars().allMatch(character -> character >= '0' && character <= '9')) {
+            return OptionalInt.empty();
+        }
+
+        //a timestamp that does not fit into an int is not valid either
+        try {
+            return OptionalInt.of(Integer.parseInt(timestamp));
+        } catch (final NumberFormatException e) {
+            return OptionalInt.empty();
+        }
+    }
+
     /**
      * Check if the message is app purpose
      *
@@ -476,4 +528,14 @@ public class MessagesHelper {
     public static boolean isAppPurpose(final Paxos.Message message) {
         return message.getType().equals(APP_PROPOSE);
     }
+
+    /**
+     * Check if the message type is app purpose
+     *
+     * @param messageType: the type of the message
+     * @return true if the type is APP_PURPOSE of false otherwise
+     */
+    public static boolean isAppPurpose(final Paxos.Message.Type messageType) {
+        return messageType.equals(APP_PROPOSE);
+    }
 }
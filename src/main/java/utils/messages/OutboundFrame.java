@@ -0,0 +1,72 @@
+package utils.messages;
+
+import com.google.protobuf.ByteString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A length prefixed NETWORK_MESSAGE, that is ready to be written on the network.
+ * It consists of a small header, specific to its destination (the length, the ids and the sender of the message, and
+ * the tag of the wrapped message), followed by the serialized wrapped message (the payload).
+ * The payload can be shared by the frames of all the destinations of a broadcast message, so it is serialized once
+ * and it is never copied.
+ */
+final class OutboundFrame {
+
+    static final int BUFFERS_COUNT = 2;
+
+    private final byte[] header;
+    private final ByteString payload;
+    private long queuedAt;
+
+    /**
+     * @param header:  the bytes that precede the payload
+     * @param payload: the serialized wrapped message
+     */
+    OutboundFrame(final byte[] header, final ByteString payload) {
+        this.header = header;
+        this.payload = payload;
+    }
+
+    /**
+     * @param queuedAt: the moment (System.nanoTime) when the frame was put into the queue of its destination
+     */
+    void setQueuedAt(final long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
+    /**
+     * @return the moment (System.nanoTime) when the frame was put into the queue of its destination
+     */
+    long getQueuedAt() {
+        return queuedAt;
+    }
+
+    /**
+     * @return the number of bytes of the frame
+     */
+    int size() {
+        return header.length + payload.size();
+    }
+
+    /**
+     * @return the buffers that contain the frame (BUFFERS_COUNT of them, the last one is a read only view of the
+     * payload)
+     */
+    ByteBuffer[] toByteBuffers() {
+        return new ByteBuffer[]{ByteBuffer.wrap(header), payload.asReadOnlyByteBuffer()};
+    }
+
+    /**
+     * Write the frame on the stream
+     *
+     * @param outputStream: the stream
+     * @throws IOException if the frame could not be written
+     */
+    void writeTo(final OutputStream outputStream) throws IOException {
+        outputStream.write(header);
+        payload.writeTo(outputStream);
+    }
+}
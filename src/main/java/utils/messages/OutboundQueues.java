@@ -0,0 +1,293 @@
+package utils.messages;
+
+import utils.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps a bounded queue of frames for every destination (host, port), that is drained by a writer thread dedicated to
+ * that destination, so the threads that send the messages never wait for the network.
+ * Every destination has a queue for every lane (control, protocol and bulk): the writer takes the frames of the control
+ * lane first, then the ones of the protocol lane and then the bulk ones, so the heartbeats never wait behind a backlog
+ * of protocol messages. The frames of a lane are written in the order in which they were queued.
+ * The writer takes all the frames that are waiting in the queue (up to a limit) and writes them together, as a batch.
+ * While the batches contain more than one frame (the destination is busy), the writer also waits a short time (that
+ * grows with the load) for more frames before writing a batch. When the load drops, the waiting time drops to 0, so a
+ * frame sent alone is written right away.
+ * A frame is counted as overflowed if the queue of its destination is full (so it is not queued), and as dropped if
+ * its writer could not write it. How long the frames wait in their queue is recorded for every lane.
+ */
+class OutboundQueues {
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final long MIN_LINGER_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_LINGER_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Map<String, DestinationQueue> queues = new ConcurrentHashMap<>();
+    private final ThreadFactory writerThreadFactory;
+    private final FrameWriter frameWriter;
+    private final LongAdder overflowedFramesCount = new LongAdder();
+    private final LongAdder droppedFramesCount = new LongAdder();
+    private final Histogram batchSizes = new Histogram();
+    private final Map<MessageLane, Histogram> laneWaitMicros = new EnumMap<>(MessageLane.class);
+
+    /**
+     * @param writerThreadFactory: the factory of the writer threads
+     * @param frameWriter:         writes a frame to its destination
+     */
+    OutboundQueues(final ThreadFactory writerThreadFactory, final FrameWriter frameWriter) {
+        this.writerThreadFactory = writerThreadFactory;
+        this.frameWriter = frameWriter;
+        for (final var lane : MessageLane.values()) {
+            laneWaitMicros.put(lane, new Histogram());
+        }
+    }
+
+    /**
+     * Put the frame into the queue of its lane, for the destination (the writer of the destination is started with the
+     * first frame)
+     *
+     * @param frame:              the frame
+     * @param lane:               the lane of the frame
+     * @param destinationAddress: the destination address
+     * @param destinationPort:    the destination port
+     */
+    void offer(final OutboundFrame frame, final MessageLane lane,
+               final String destinationAddress, final int destinationPort) {
+        final var queue = queues.computeIfAbsent(
+                destinationAddress + ":" + destinationPort,
+                destination -> startWriter(destination, destinationAddress, destinationPort));
+
+        if (!queue.offer(frame, lane)) {
+            overflowedFramesCount.increment();
+        }
+    }
+
+    /**
+     * @return the number of frames that were not queued, because the queue of their destination was full
+     */
+    long getOverflowedFramesCount() {
+        return overflowedFramesCount.sum();
+    }
+
+    /**
+     * @return the number of frames that were queued, but could not be written
+     */
+    long getDroppedFramesCount() {
+        return droppedFramesCount.sum();
+    }
+
+    /**
+     * @return the number of frames that wait to be written
+     */
+    long getQueuedFramesCount() {
+        return queues.values().stream().mapToLong(DestinationQueue::size).sum();
+    }
+
+    /**
+     * @return the histogram of the number of frames written together
+     */
+    Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * @param lane: the lane
+     * @return the histogram of how long the frames of the lane waited in their queue, in microseconds
+     */
+    Histogram getWaitMicros(final MessageLane lane) {
+        return laneWaitMicros.get(lane);
+    }
+
+    /**
+     * Create the queue of the destination, and start the thread that writes its frames
+     *
+     * @param destination:        the name of the destination
+     * @param destinationAddress: the destination address
+     * @param destinationPort:    the destination port
+     * @return the queue of the destination
+     */
+    private DestinationQueue startWriter(final String destination,
+                                         final String destinationAddress,
+                                         final int destinationPort) {
+        final var queue = new DestinationQueue();
+
+        final var writer = writerThreadFactory.newThread(() -> {
+            final var batch = new ArrayList<OutboundFrame>(MAX_BATCH_SIZE);
+            var lingerNanos = 0L;
+
+            //write the frames in batches, until the thread is interrupted
+            while (!Thread.currentThread().isInterrupted()) {
+                if (queue.drainTo(batch) == 0) {
+                    queue.await(0);
+                    continue;
+                }
+                fillBatch(queue, batch, lingerNanos);
+                lingerNanos = adaptLinger(lingerNanos, batch.size());
+
+                batchSizes.record(batch.size());
+                droppedFramesCount.add(batch.size() - frameWriter.write(batch, destinationAddress, destinationPort));
+                batch.clear();
+            }
+        });
+        writer.setName("outbound-" + destination);
+        writer.setDaemon(true);
+        queue.writer = writer;
+        writer.start();
+
+        return queue;
+    }
+
+    /**
+     * If the linger time is not 0, wait for more frames until the batch is full or the linger time passes
+     *
+     * @param queue:       the queue of the destination
+     * @param batch:       the batch
+     * @param lingerNanos: how long to wait for more frames
+     */
+    private static void fillBatch(final DestinationQueue queue,
+                                  final List<OutboundFrame> batch,
+                                  final long lingerNanos) {
+        if (lingerNanos == 0) {
+            return;
+        }
+
+        final var deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < MAX_BATCH_SIZE && !Thread.currentThread().isInterrupted()) {
+            if (queue.drainTo(batch) > 0) {
+                continue;
+            }
+            final var waitNanos = deadline - System.nanoTime();
+            if (waitNanos <= 0) {
+                return;
+            }
+            queue.await(waitNanos);
+        }
+    }
+
+    /**
+     * Double the linger time while the batches contain more than one frame, and halve it otherwise
+     *
+     * @param lingerNanos: the current linger time
+     * @param batchSize:   the size of the last batch
+     * @return the linger time for the next batch
+     */
+    private static long adaptLinger(final long lingerNanos, final int batchSize) {
+        if (batchSize > 1) {
+            return Math.min(Math.max(lingerNanos * 2, MIN_LINGER_NANOS), MAX_LINGER_NANOS);
+        }
+        return lingerNanos / 2 < MIN_LINGER_NANOS ? 0 : lingerNanos / 2;
+    }
+
+    /**
+     * The queues of the lanes of a destination, drained by the writer of the destination
+     * The writer parks when all the queues are empty, and the threads that queue a frame wake it
+     */
+    private final class DestinationQueue {
+
+        private final Map<MessageLane, Queue<OutboundFrame>> lanes = new EnumMap<>(MessageLane.class);
+        private volatile Thread writer;
+        private volatile boolean isWaiting;
+
+        private DestinationQueue() {
+            for (final var lane : MessageLane.values()) {
+                lanes.put(lane, new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+            }
+        }
+
+        /**
+         * @param frame: the frame
+         * @param lane:  the lane of the frame
+         * @return true if the frame was queued, false if the queue of the lane is full
+         */
+        private boolean offer(final OutboundFrame frame, final MessageLane lane) {
+            frame.setQueuedAt(System.nanoTime());
+            if (!lanes.get(lane).offer(frame)) {
+                return false;
+            }
+            if (isWaiting) {
+                LockSupport.unpark(writer);
+            }
+            return true;
+        }
+
+        /**
+         * Move into the batch the frames that wait (until the batch is full), the ones of the higher priority lanes first
+         *
+         * @param batch: the batch
+         * @return the number of frames that were moved
+         */
+        private int drainTo(final List<OutboundFrame> batch) {
+            final var now = System.nanoTime();
+            var movedFrames = 0;
+            for (final var lane : MessageLane.values()) {
+                final var waitMicros = laneWaitMicros.get(lane);
+                final var queue = lanes.get(lane);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    final var frame = queue.poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    waitMicros.record(TimeUnit.NANOSECONDS.toMicros(now - frame.getQueuedAt()));
+                    batch.add(frame);
+                    ++movedFrames;
+                }
+            }
+            return movedFrames;
+        }
+
+        /**
+         * Park the writer until a frame is queued (or until the timeout passes)
+         *
+         * @param timeoutNanos: how long to wait at most, or 0 to wait without a timeout
+         */
+        private void await(final long timeoutNanos) {
+            isWaiting = true;
+            if (size() == 0) {
+                if (timeoutNanos == 0) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+            }
+            isWaiting = false;
+        }
+
+        /**
+         * @return the number of frames that wait, in all the lanes
+         */
+        private long size() {
+            var size = 0L;
+            for (final var lane : lanes.values()) {
+                size += lane.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Writes frames on the network
+     */
+    @FunctionalInterface
+    interface FrameWriter {
+
+        /**
+         * @param frames:             the frames (in the order in which they should be written)
+         * @param destinationAddress: the destination address
+         * @param destinationPort:    the destination port
+         * @return the number of frames that were written
+         */
+        int write(final List<OutboundFrame> frames, final String destinationAddress, final int destinationPort);
+    }
+}
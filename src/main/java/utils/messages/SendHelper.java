@@ -1,55 +1,301 @@
 package utils.messages;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 import consensus.Paxos;
+import utils.metrics.Histogram;
 
 import java.io.IOException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static consensus.Paxos.Message.Type.NETWORK_MESSAGE;
 import static consensus.Paxos.Message.Type.PL_SEND;
 
 public class SendHelper {
 
+    private static volatile ConnectionPool connectionPool;
+    private static volatile IOutboundTransport localTransport;
+    private static final AtomicLong nextMessageId = new AtomicLong(new Random().nextLong());
+    private static volatile OutboundQueues outboundQueues = new OutboundQueues(Thread::new, SendHelper::writeFrames);
+
+    /**
+     * Set the factory of the threads that write the messages on the network (one thread for every destination)
+     * It should be called before any message is sent
+     * @param threadFactory: the thread factory
+     */
+    public static void setWriterThreadFactory(final ThreadFactory threadFactory) {
+        outboundQueues = new OutboundQueues(threadFactory, SendHelper::writeFrames);
+    }
+
+    /**
+     * Set the transport that is tried before the network (for example for the nodes that run in the same process)
+     * @param transport: the transport
+     */
+    public static void setLocalTransport(final IOutboundTransport transport) {
+        localTransport = transport;
+    }
+
+    /**
+     * Keep a connection open for every destination and write all its messages on it, instead of opening a connection
+     * for every message
+     * The hub (and any destination that closes the connection after one message) still gets one message per connection
+     * @param hubAddress: the hub address
+     * @param hubPort: the hub port
+     */
+    public static synchronized void enablePersistentConnections(final String hubAddress, final int hubPort) {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool();
+        }
+        connectionPool.addSingleFrameDestination(hubAddress, hubPort);
+    }
+
     /**
      * sends a message to the given destination, converting it into byte array
+     * If the destination can be reached through the local transport the message is handed to it, otherwise the message
+     * is only put into the outbound queue of the destination (in the lane of the message), and it is written later by
+     * its writer thread
+     * @param message: the message that will be send over the network
+     * @param destinationAddress: the message destination address
+     * @param destinationPort: the message destination port
+     * @param nodePort: the node port (the sender listening port)
+     */
+    public static void sendMessage(final Paxos.Message message,
+                                   final String destinationAddress,
+                                   final int destinationPort, final int nodePort) {
+        final var wrappedMessage = PL_SEND.equals(message.getType()) ? message.getPlSend().getMessage() : message;
+        sendMessage(message, wrappedMessage.toByteString(), destinationAddress, destinationPort, nodePort);
+    }
+
+    /**
+     * sends a message to the given destination, like sendMessage, reusing the bytes of the wrapped message (so a message
+     * sent to several destinations is serialized only once)
      * @param message: the message that will be send over the network
+     * @param payload: the serialized message wrapped into the network message (the message of the PL_SEND, or the
+     *               message itself)
      * @param destinationAddress: the message destination address
      * @param destinationPort: the message destination port
      * @param nodePort: the node port (the sender listening port)
      */
     public static void sendMessage(final Paxos.Message message,
+                                   final ByteString payload,
                                    final String destinationAddress,
                                    final int destinationPort, final int nodePort) {
+        final var networkMessage = createNetworkMessage(message, nodePort);
+
+        final var transport = localTransport;
+        if (transport != null && transport.send(networkMessage, destinationAddress, destinationPort)) {
+            return;
+        }
+
+        outboundQueues.offer(createFrame(networkMessage, payload), MessageLane.of(networkMessage), destinationAddress, destinationPort);
+    }
+
+    /**
+     * @return the number of messages that were not sent, because the outbound queue of their destination was full
+     */
+    public static long getOverflowedMessagesCount() {
+        return outboundQueues.getOverflowedFramesCount();
+    }
+
+    /**
+     * @return the number of messages that were queued, but could not be written on the network
+     */
+    public static long getDroppedMessagesCount() {
+        return outboundQueues.getDroppedFramesCount();
+    }
+
+    /**
+     * @return the number of messages that wait in the outbound queues
+     */
+    public static long getQueuedMessagesCount() {
+        return outboundQueues.getQueuedFramesCount();
+    }
+
+    /**
+     * @return the histogram of the number of messages that were written together to a destination
+     */
+    public static Histogram getBatchSizeHistogram() {
+        return outboundQueues.getBatchSizes();
+    }
+
+    /**
+     * @param lane: the lane
+     * @return the histogram of how long the messages of the lane waited in the outbound queues, in microseconds
+     */
+    public static Histogram getQueueWaitHistogram(final MessageLane lane) {
+        return outboundQueues.getWaitMicros(lane);
+    }
+
+    /**
+     * Write the frames with a single write on the persistent connection of the destination (if they are enabled and the
+     * destination accepts them), otherwise write every frame on its own connection (open a connection to the destination, write the frame and
+     * close the connection)
+     * The frames that the pool did not write (because its connection failed, or during its backoff) are also written one
+     * per connection
+     * @param frames: the frames of the messages
+     * @param destinationAddress: the message destination address
+     * @param destinationPort: the message destination port
+     * @return the number of frames that were written
+     */
+    private static int writeFrames(final List<OutboundFrame> frames, final String destinationAddress, final int destinationPort) {
+        final var pool = connectionPool;
+        var writtenFrames = pool != null ? pool.write(frames, destinationAddress, destinationPort) : 0;
+
+        //the frames that the pool did not write are written one per connection
+        for (final var frame : frames.subList(writtenFrames, frames.size())) {
+            if (writeFrame(frame, destinationAddress, destinationPort)) {
+                ++writtenFrames;
+            }
+        }
+        return writtenFrames;
+    }
+
+    /**
+     * Open a connection to the destination, write the frame and close the connection
+     * @param frame: the frame of the message
+     * @param destinationAddress: the message destination address
+     * @param destinationPort: the message destination port
+     * @return true if the frame was written, false otherwise
+     */
+    private static boolean writeFrame(final OutboundFrame frame, final String destinationAddress, final int destinationPort) {
         try(var socket = new Socket(destinationAddress, destinationPort)) {
             var outputStream = socket.getOutputStream();
-            outputStream.write(sentMessageToBytes(message, nodePort));
+            frame.writeTo(outputStream);
             outputStream.flush();
+            return true;
         } catch (final IOException e) {
             System.out.println("SendHelper -> Connection lost, cannot send message...");
+            return false;
         }
     }
 
     /**
-     * This is a helper method, that converts the message from object into byte array, and sends it over the network
-     * Firstly in the array will be the length of the message (an integer) and after that the message itself
+     * Wrap the message into a NETWORK_MESSAGE, that tells to the destination who sent it
+     * Every NETWORK_MESSAGE gets a unique id, so the destination can drop the copies of a message received twice
      * @param message: the message that needs to be send over the network
      * @param nodePort: the port on witch the sender listens for messages
-     * @return a byte array
+     * @return the NETWORK_MESSAGE
      */
-    private static byte[] sentMessageToBytes(final Paxos.Message message, final int nodePort) {
-        final var sentMessage = Paxos.Message.newBuilder()
+    private static Paxos.Message createNetworkMessage(final Paxos.Message message, final int nodePort) {
+        return Paxos.Message.newBuilder()
                 .setType(NETWORK_MESSAGE)
                 .setNetworkMessage(Paxos.NetworkMessage.newBuilder()
                         .setMessage(PL_SEND.equals(message.getType()) ? message.getPlSend().getMessage() : message)
                         .setSenderHost(PL_SEND.equals(message.getType()) ? message.getPlSend().getDestination().getHost() : "")
                         .setSenderListeningPort(nodePort)
                         .build())
+                .setMessageUuid(nextMessageUuid())
                 .setAbstractionId(message.getAbstractionId())
                 .setSystemId(message.getSystemId())
                 .build();
-        final var messageBytes = sentMessage.toByteArray();
-        return ByteBuffer.allocate(Integer.BYTES + messageBytes.length).putInt(messageBytes.length).put(messageBytes).array();
     }
 
-}
\ No newline at end of file
+    /**
+     * The ids are consecutive numbers (written in base 36, so they are short), starting from a random number, so the
+     * ids given after a restart do not repeat the ones given before it
+     * @return an id that was not given to any other message sent by this process
+     */
+    private static String nextMessageUuid() {
+        return Long.toUnsignedString(nextMessageId.getAndIncrement(), Character.MAX_RADIX);
+    }
+
+    /**
+     * This is a helper method, that converts the network message into a frame that can be sent over the network
+     * Firstly in the frame will be the length of the message (an integer) and after that the message itself
+     * The message is serialized by hand, in the same way as protobuf does it, so that the wrapped message (which is
+     * the only large part) is serialized only once for all the destinations of a broadcast, and it is never copied
+     * @param networkMessage: the NETWORK_MESSAGE that needs to be send over the network
+     * @param payload: the serialized message wrapped into the NETWORK_MESSAGE
+     * @return the frame
+     */
+    private static OutboundFrame createFrame(final Paxos.Message networkMessage, final ByteString payload) {
+        final var wrapper = networkMessage.getNetworkMessage();
+
+        //compute the size of the wrapper (its fields, and the wrapped message) and of the whole message
+        final var wrapperSize = computeStringSize(Paxos.NetworkMessage.SENDERHOST_FIELD_NUMBER, wrapper.getSenderHost())
+                + computeInt32Size(Paxos.NetworkMessage.SENDERLISTENINGPORT_FIELD_NUMBER, wrapper.getSenderListeningPort())
+                + computeLengthDelimitedSize(Paxos.NetworkMessage.MESSAGE_FIELD_NUMBER, payload.size());
+        final var messageSize = computeInt32Size(Paxos.Message.TYPE_FIELD_NUMBER, networkMessage.getTypeValue())
+                + computeStringSize(Paxos.Message.MESSAGEUUID_FIELD_NUMBER, networkMessage.getMessageUuid())
+                + computeStringSize(Paxos.Message.ABSTRACTIONID_FIELD_NUMBER, networkMessage.getAbstractionId())
+                + computeStringSize(Paxos.Message.SYSTEMID_FIELD_NUMBER, networkMessage.getSystemId())
+                + computeLengthDelimitedSize(Paxos.Message.NETWORKMESSAGE_FIELD_NUMBER, wrapperSize);
+
+        //write the length and all the fields, excepting the bytes of the wrapped message (in the order of their numbers)
+        final var header = new byte[Integer.BYTES + messageSize - payload.size()];
+        ByteBuffer.wrap(header).putInt(messageSize);
+        final var output = CodedOutputStream.newInstance(header, Integer.BYTES, header.length - Integer.BYTES);
+        try {
+            if (networkMessage.getTypeValue() != 0) {
+                output.writeEnum(Paxos.Message.TYPE_FIELD_NUMBER, networkMessage.getTypeValue());
+            }
+            writeString(output, Paxos.Message.MESSAGEUUID_FIELD_NUMBER, networkMessage.getMessageUuid());
+            writeString(output, Paxos.Message.ABSTRACTIONID_FIELD_NUMBER, networkMessage.getAbstractionId());
+            writeString(output, Paxos.Message.SYSTEMID_FIELD_NUMBER, networkMessage.getSystemId());
+            writeLengthDelimitedTag(output, Paxos.Message.NETWORKMESSAGE_FIELD_NUMBER, wrapperSize);
+            writeString(output, Paxos.NetworkMessage.SENDERHOST_FIELD_NUMBER, wrapper.getSenderHost());
+            if (wrapper.getSenderListeningPort() != 0) {
+                output.writeInt32(Paxos.NetworkMessage.SENDERLISTENINGPORT_FIELD_NUMBER, wrapper.getSenderListeningPort());
+            }
+            writeLengthDelimitedTag(output, Paxos.NetworkMessage.MESSAGE_FIELD_NUMBER, payload.size());
+            output.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            //the header is computed exactly, so it cannot overflow
+            throw new IllegalStateException(e);
+        }
+
+        return new OutboundFrame(header, payload);
+    }
+
+    /**
+     * @param fieldNumber: the number of the field
+     * @param value: the value of the field
+     * @return the size of the field, or 0 if the value is the default one (so it is not serialized)
+     */
+    private static int computeStringSize(final int fieldNumber, final String value) {
+        return value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(fieldNumber, value);
+    }
+
+    /**
+     * @param fieldNumber: the number of the field
+     * @param value: the value of the field
+     * @return the size of the field, or 0 if the value is the default one (so it is not serialized)
+     */
+    private static int computeInt32Size(final int fieldNumber, final int value) {
+        return value == 0 ? 0 : CodedOutputStream.computeInt32Size(fieldNumber, value);
+    }
+
+    /**
+     * @param fieldNumber: the number of the field
+     * @param length: the length of the field content
+     * @return the size of the field (tag, length and content)
+     */
+    private static int computeLengthDelimitedSize(final int fieldNumber, final int length) {
+        return CodedOutputStream.computeTagSize(fieldNumber) + CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+    }
+
+    /**
+     * Write the string field, if its value is not the default one
+     */
+    private static void writeString(final CodedOutputStream output,
+                                    final int fieldNumber, final String value) throws IOException {
+        if (!value.isEmpty()) {
+            output.writeString(fieldNumber, value);
+        }
+    }
+
+    /**
+     * Write the tag and the length of a length delimited field (its content is written after)
+     */
+    private static void writeLengthDelimitedTag(final CodedOutputStream output,
+                                                final int fieldNumber, final int length) throws IOException {
+        output.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(length);
+    }
+}
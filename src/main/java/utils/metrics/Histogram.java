@@ -0,0 +1,93 @@
+package utils.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the recorded values into buckets whose bounds are powers of two: the bucket 0 holds the value 0, and the
+ * bucket i (i >= 1) holds the values from 2^(i-1) to 2^i - 1. The last bucket holds all the values that are larger.
+ * The values can be recorded concurrently, without locking.
+ */
+public class Histogram {
+
+    private static final int BUCKETS_COUNT = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS_COUNT];
+
+    public Histogram() {
+        for (var bucket = 0; bucket < BUCKETS_COUNT; ++bucket) {
+            buckets[bucket] = new LongAdder();
+        }
+    }
+
+    /**
+     * Count the value into its bucket
+     *
+     * @param value: the value (the negative values are counted as 0)
+     */
+    public void record(final long value) {
+        buckets[getBucket(value)].increment();
+    }
+
+    /**
+     * @return the number of values recorded into every bucket (the bucket i is at the index i)
+     */
+    public long[] getBucketCounts() {
+        final var counts = new long[BUCKETS_COUNT];
+        for (var bucket = 0; bucket < BUCKETS_COUNT; ++bucket) {
+            counts[bucket] = buckets[bucket].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        var count = 0L;
+        for (final var bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @param bucket: the bucket
+     * @return the largest value that is counted into the bucket (the last bucket has no limit)
+     */
+    public static long getBucketUpperBound(final int bucket) {
+        return bucket == BUCKETS_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * @return the buckets that are not empty, as "upper bound: count" pairs
+     */
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder("[");
+        final var counts = getBucketCounts();
+        for (var bucket = 0; bucket < BUCKETS_COUNT; ++bucket) {
+            if (counts[bucket] == 0) {
+                continue;
+            }
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append("<=")
+                    .append(bucket == BUCKETS_COUNT - 1 ? "inf" : String.valueOf(getBucketUpperBound(bucket)))
+                    .append(": ")
+                    .append(counts[bucket]);
+        }
+        return builder.append("]").toString();
+    }
+
+    /**
+     * @param value: the value
+     * @return the bucket of the value
+     */
+    private static int getBucket(final long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(Long.SIZE - Long.numberOfLeadingZeros(value), BUCKETS_COUNT - 1);
+    }
+}
@@ -0,0 +1,74 @@
+package utils.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a stage that takes items from a queue and handles them: the number of items that wait in the queue,
+ * how long the items wait before they are taken (the wait time) and how long they take to be handled (the service
+ * time). The times are recorded in microseconds.
+ * A stage whose wait time grows while its service time does not is the bottleneck (it has too few threads).
+ */
+public class StageMetrics {
+
+    private final String name;
+    private final LongSupplier queueDepth;
+    private final Histogram waitMicros = new Histogram();
+    private final Histogram serviceMicros = new Histogram();
+
+    /**
+     * @param name:       the name of the stage
+     * @param queueDepth: gives the number of items that wait in the queue of the stage
+     */
+    public StageMetrics(final String name, final LongSupplier queueDepth) {
+        this.name = name;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @param waitNanos: how long an item waited in the queue, in nanoseconds
+     */
+    public void recordWait(final long waitNanos) {
+        waitMicros.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+    }
+
+    /**
+     * @param serviceNanos: how long an item took to be handled, in nanoseconds
+     */
+    public void recordService(final long serviceNanos) {
+        serviceMicros.record(TimeUnit.NANOSECONDS.toMicros(serviceNanos));
+    }
+
+    /**
+     * @return the name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of items that wait in the queue of the stage
+     */
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    /**
+     * @return the histogram of the wait times, in microseconds
+     */
+    public Histogram getWaitMicros() {
+        return waitMicros;
+    }
+
+    /**
+     * @return the histogram of the service times, in microseconds
+     */
+    public Histogram getServiceMicros() {
+        return serviceMicros;
+    }
+
+    @Override
+    public String toString() {
+        return name + " depth=" + getQueueDepth() + " wait(us)=" + waitMicros + " service(us)=" + serviceMicros;
+    }
+}
@@ -0,0 +1,159 @@
+package utils.processes;
+
+import consensus.Paxos;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The processes of a consensus system, indexed once (when the process list is known), so that a process is found
+ * without scanning the list.
+ * Every process gets a dense id (its position into the list, from 0 to size - 1), so the layers can keep the data of
+ * the processes into arrays and bitsets. The ProcessId instances of the list are kept and returned by all the lookups,
+ * so the same process is always the same instance.
+ * The ports are kept sorted (with the ids of their processes), so a process is found by its port with a binary search,
+ * and the ids of the processes are also kept sorted by rank (the highest first), so the leader candidates are walked
+ * without sorting, and the min rank process is known in advance.
+ * It is immutable, so it can be shared by the threads of the system.
+ */
+public final class ProcessRegistry {
+
+    private static final ProcessRegistry EMPTY = new ProcessRegistry(List.of());
+
+    private final List<Paxos.ProcessId> processes;
+    private final int[] sortedPorts;
+    private final int[] sortedPortIds;
+    private final int[] idsByDescendingRank;
+    private final int minRankId;
+
+    /**
+     * @param processes: the processes of the system (the position of a process into the list becomes its id)
+     */
+    public ProcessRegistry(final List<Paxos.ProcessId> processes) {
+        this.processes = List.copyOf(processes);
+
+        //sort the ids by port, and by rank (the sort is stable, so on equal keys the first process from the list is first)
+        final var idsByPort = IntStream.range(0, this.processes.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(id -> this.processes.get(id).getPort()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.sortedPorts = Arrays.stream(idsByPort).map(id -> this.processes.get(id).getPort()).toArray();
+        this.sortedPortIds = idsByPort;
+        this.idsByDescendingRank = IntStream.range(0, this.processes.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(id -> -this.processes.get(id).getRank()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.minRankId = IntStream.range(0, this.processes.size())
+                .boxed()
+                .min(Comparator.comparingInt(id -> this.processes.get(id).getRank()))
+                .orElse(-1);
+    }
+
+    /**
+     * @return a registry without processes (used until the process list is known)
+     */
+    public static ProcessRegistry empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the number of processes
+     */
+    public int size() {
+        return processes.size();
+    }
+
+    /**
+     * @return the processes, in the order of their ids (the list cannot be modified)
+     */
+    public List<Paxos.ProcessId> getProcesses() {
+        return processes;
+    }
+
+    /**
+     * @param id: the id of the process
+     * @return the process
+     */
+    public Paxos.ProcessId getProcess(final int id) {
+        return processes.get(id);
+    }
+
+    /**
+     * Find a process only by its port (the senders of the network messages are identified only by their listening port)
+     *
+     * @param port: the port of the process
+     * @return the id of the first process with the port, or -1 if there is no such process
+     */
+    public int indexOf(final int port) {
+        final var position = firstPosition(port);
+        return position < 0 ? -1 : sortedPortIds[position];
+    }
+
+    /**
+     * @param host: the host of the process
+     * @param port: the port of the process
+     * @return the id of the process with the host and the port, or -1 if there is no such process
+     */
+    public int indexOf(final String host, final int port) {
+        final var position = firstPosition(port);
+        if (position < 0) {
+            return -1;
+        }
+
+        //the processes with the same port are next to each other
+        for (var index = position; index < sortedPorts.length && sortedPorts[index] == port; ++index) {
+            if (processes.get(sortedPortIds[index]).getHost().equals(host)) {
+                return sortedPortIds[index];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param processId: the process
+     * @return the id of the process with the same host and port, or -1 if there is no such process
+     */
+    public int indexOf(final Paxos.ProcessId processId) {
+        return indexOf(processId.getHost(), processId.getPort());
+    }
+
+    /**
+     * @return the process with the lowest rank (null if there are no processes)
+     */
+    public Paxos.ProcessId getMinRankProcess() {
+        return minRankId < 0 ? null : processes.get(minRankId);
+    }
+
+    /**
+     * @param excludedIds: the ids of the processes that are skipped
+     * @return the process with the highest rank that is not excluded (null if all the processes are excluded)
+     */
+    public Paxos.ProcessId getMaxRankProcess(final BitSet excludedIds) {
+        for (final var id : idsByDescendingRank) {
+            if (!excludedIds.get(id)) {
+                return processes.get(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param port: the port
+     * @return the first position of the port into the sorted ports, or -1 if the port is not there
+     */
+    private int firstPosition(final int port) {
+        var position = Arrays.binarySearch(sortedPorts, port);
+        if (position < 0) {
+            return -1;
+        }
+        while (position > 0 && sortedPorts[position - 1] == port) {
+            --position;
+        }
+        return position;
+    }
+}
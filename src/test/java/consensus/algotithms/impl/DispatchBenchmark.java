@@ -0,0 +1,124 @@
+package consensus.algotithms.impl;
+
+import consensus.Paxos;
+import consensus.algotithms.IAbstractionLayer;
+import consensus.module.IEventLoopGroup;
+import consensus.module.ITimer;
+import consensus.module.impl.ConsensusSystemModule;
+import utils.messages.MessageLane;
+import utils.metrics.StageMetrics;
+import utils.values.ValueHelper;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a system takes to handle one message, depending on the number of epoch consensus layers it has
+ * The message is an EP_DECIDE of an older epoch, which the uniform consensus layer consumes and the epoch layers reject
+ *
+ * Every size is measured twice: with the layers registered by the message types that they declare (the dispatch
+ * table), and with the same layers hidden behind a plain IAbstractionLayer, so that they are offered every message (as
+ * all the layers were before the dispatch table)
+ * The system runs on the calling thread, so the time includes queueing the message and draining the system
+ *
+ * Run it with: gradle benchmark -Pharness=consensus.algotithms.impl.DispatchBenchmark -PharnessArgs="[messages]"
+ */
+public class DispatchBenchmark {
+
+    private static final int NODE_PORT = 5011;
+    private static final int ROUNDS = 7;
+
+    public static void main(final String[] args) {
+        final var messagesCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        //warm up the jit on both paths, so that the first size is not measured while compiling
+        measure(createSystem(10, false), messagesCount);
+        measure(createSystem(10, true), messagesCount);
+
+        System.out.println("epochs   catch-all   dispatch table");
+        for (final var epochs : new int[]{1, 10, 100}) {
+            final var catchAllNanos = measure(createSystem(epochs, false), messagesCount);
+            final var tableNanos = measure(createSystem(epochs, true), messagesCount);
+            System.out.printf("%-8d %6.0f ns   %6.0f ns%n", epochs, catchAllNanos, tableNanos);
+        }
+    }
+
+    /**
+     * @return the best time per message over several rounds, in nanoseconds
+     */
+    private static double measure(final ConsensusSystemModule system, final int messagesCount) {
+        final var message = Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_DECIDE)
+                .setEpDecide(Paxos.EpDecide.newBuilder().setEts(-1).setValue(ValueHelper.getUndefinedValue()))
+                .build();
+
+        var bestNanos = Double.MAX_VALUE;
+        for (var round = 0; round < ROUNDS; ++round) {
+            final var startedAt = System.nanoTime();
+            for (var index = 0; index < messagesCount; ++index) {
+                system.trigger(message);
+            }
+            bestNanos = Math.min(bestNanos, (System.nanoTime() - startedAt) / (double) messagesCount);
+        }
+        return bestNanos;
+    }
+
+    /**
+     * Create a system with a uniform consensus layer and the given number of epoch consensus layers (the first one is
+     * created by the uniform consensus layer)
+     *
+     * @param epochs:       the number of epoch consensus layers
+     * @param declaredOnly: true for offering the messages only to the layers that declared their types
+     */
+    private static ConsensusSystemModule createSystem(final int epochs, final boolean declaredOnly) {
+        final var laneMetrics = new EnumMap<MessageLane, StageMetrics>(MessageLane.class);
+        for (final var lane : MessageLane.values()) {
+            laneMetrics.put(lane, new StageMetrics(lane.name(), () -> 0));
+        }
+        final var system = new ConsensusSystemModule(5000, NODE_PORT, "localhost", "benchmark",
+                new CallerRunsEventLoopGroup(), new StageMetrics("system", () -> 0), laneMetrics, 0, closed -> {
+        });
+
+        final var processes = new ArrayList<Paxos.ProcessId>();
+        for (var index = 0; index < 3; ++index) {
+            processes.add(Paxos.ProcessId.newBuilder()
+                    .setHost("localhost")
+                    .setPort(NODE_PORT + index)
+                    .setOwner("benchmark")
+                    .setIndex(index + 1)
+                    .setRank(index + 1)
+                    .build());
+        }
+        system.alterProcessList(processes);
+
+        system.pushLayer(asLayer(new UniformConsensusAbstraction(system), declaredOnly));
+        for (var ets = 1; ets < epochs; ++ets) {
+            final var state = Paxos.EpState_.newBuilder().setValue(ValueHelper.getUndefinedValue()).build();
+            system.pushLayer(asLayer(new EpochConsensusAbstraction(system, ets, state), declaredOnly));
+        }
+
+        system.init();
+        return system;
+    }
+
+    private static IAbstractionLayer asLayer(final IAbstractionLayer layer, final boolean declaredOnly) {
+        return declaredOnly ? layer : layer::onMessage;
+    }
+
+    /**
+     * Runs the tasks right away, on the thread that submits them
+     */
+    private static final class CallerRunsEventLoopGroup implements IEventLoopGroup {
+
+        @Override
+        public void execute(final Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public ITimer schedule(final Runnable task, final long delay, final TimeUnit unit) {
+            throw new UnsupportedOperationException("the benchmark does not use timers");
+        }
+    }
+}
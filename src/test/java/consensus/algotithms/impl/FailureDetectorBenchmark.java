@@ -0,0 +1,201 @@
+package consensus.algotithms.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Compares the fixed timeout failure detector with the phi accrual failure detector: how many times they falsely
+ * suspect a process that is only slow, and how long they take to suspect it once it crashed
+ *
+ * The detectors run in a simulated time (in steps of one millisecond), so a run of a minute takes a few milliseconds
+ * and the same seed gives the same run for both detectors
+ * The watched process replies to every heartbeat request after 2 to 10 ms, but its host is loaded: in every period of
+ * 100 ms it may stall for 50 to 300 ms (with the probability given by the load), and the requests that it receives
+ * during a stall are answered only after it. It crashes after about a minute (at a random moment of a second), and the
+ * requests sent after that (or answered after that) get no reply
+ * The detection time is averaged over the runs in which the process was not already suspected when it crashed
+ * The fixed detector follows EventuallyPerfectFailureDetectorAbstraction for a process that sends only heartbeat
+ * replies: it is asked at the start of every period, it is suspected if it did not reply until the end of the period,
+ * and the period grows by 100 ms every time a suspected process replies. The phi detector uses the ArrivalWindow of PhiAccrualFailureDetectorAbstraction, with
+ * the same settings, and checks phi every 100 ms
+ *
+ * Run it with: gradle benchmark -Pharness=consensus.algotithms.impl.FailureDetectorBenchmark -PharnessArgs="[runs]"
+ */
+public class FailureDetectorBenchmark {
+
+    //the settings of the detectors
+    private static final int DELTA = 100;
+    private static final int HEARTBEAT_INTERVAL = 100;
+    private static final int WINDOW_SIZE = 100;
+    private static final double MIN_STD_DEVIATION = 25;
+    private static final double PHI_THRESHOLD = 8;
+
+    //the simulated process
+    private static final long CRASH_AFTER = 60_000;
+    private static final long RUN_END = CRASH_AFTER + 11_000;
+    private static final int MIN_LATENCY = 2;
+    private static final int MAX_LATENCY = 10;
+    private static final int MIN_STALL = 50;
+    private static final int MAX_STALL = 300;
+
+    public static void main(final String[] args) {
+        final var runs = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        System.out.println("load    fixed: false suspicions   detection   final timeout"
+                + "   phi: false suspicions   detection");
+        for (final var load : new double[]{0, 0.05, 0.15, 0.30}) {
+            final var fixed = new Result();
+            final var phi = new Result();
+            for (var run = 0; run < runs; ++run) {
+                final var random = new Random(run);
+                final var crashAt = CRASH_AFTER + random.nextInt(1000);
+                final var stalls = createStalls(random, load, crashAt);
+                runFixed(new Host(stalls, crashAt, new Random(run)), fixed);
+                runPhi(new Host(stalls, crashAt, new Random(run)), phi);
+            }
+            System.out.printf("%4.0f%%   %21.2f   %6.0f ms   %10.0f ms   %21.2f   %6.0f ms%n",
+                    load * 100,
+                    fixed.falseSuspicions / (double) runs, fixed.getAverageDetectionMillis(),
+                    fixed.finalDelay / (double) runs,
+                    phi.falseSuspicions / (double) runs, phi.getAverageDetectionMillis());
+        }
+        System.out.println("(the averages of " + runs + " runs, the process crashes after " + CRASH_AFTER / 1000 + " s)");
+    }
+
+    /**
+     * Ask the process at every timeout, and suspect it at the next timeout if it did not reply meanwhile
+     */
+    private static void runFixed(final Host host, final Result result) {
+        final var replies = new PriorityQueue<Long>();
+        var delay = DELTA;
+        var isAlive = true;
+        var isSuspected = false;
+        var nextTimeout = (long) delay;
+
+        for (var now = 0L; now < RUN_END; ++now) {
+            while (!replies.isEmpty() && replies.peek() == now) {
+                replies.poll();
+                isAlive = true;
+            }
+            if (now != nextTimeout) {
+                continue;
+            }
+
+            if (isAlive && isSuspected) {
+                delay += DELTA;
+                isSuspected = false;
+            } else if (!isAlive && !isSuspected) {
+                isSuspected = true;
+                result.onSuspicion(now, host.crashAt);
+            }
+            isAlive = false;
+            host.request(now, replies);
+            nextTimeout = now + delay;
+        }
+        result.finalDelay += delay;
+    }
+
+    /**
+     * Ask the process every heartbeat interval, and suspect it when phi passes the threshold
+     */
+    private static void runPhi(final Host host, final Result result) {
+        final var replies = new PriorityQueue<Long>();
+        final var window = new ArrivalWindow(WINDOW_SIZE, HEARTBEAT_INTERVAL, MIN_STD_DEVIATION, 0);
+        var isSuspected = false;
+
+        for (var now = 0L; now < RUN_END; ++now) {
+            while (!replies.isEmpty() && replies.peek() == now) {
+                replies.poll();
+                window.heartbeat(now);
+                isSuspected = false;
+            }
+            if (now == 0 || now % HEARTBEAT_INTERVAL != 0) {
+                continue;
+            }
+
+            if (!isSuspected && window.phi(now) > PHI_THRESHOLD) {
+                isSuspected = true;
+                result.onSuspicion(now, host.crashAt);
+            }
+            host.request(now, replies);
+        }
+    }
+
+    /**
+     * @return the stalls of the host, as pairs of start and end moments, in order
+     */
+    private static List<long[]> createStalls(final Random random, final double load, final long crashAt) {
+        final var stalls = new ArrayList<long[]>();
+        for (var periodStart = 0L; periodStart < crashAt; periodStart += HEARTBEAT_INTERVAL) {
+            if (random.nextDouble() < load) {
+                final var start = periodStart + random.nextInt(HEARTBEAT_INTERVAL);
+                final var end = start + MIN_STALL + random.nextInt(MAX_STALL - MIN_STALL + 1);
+                stalls.add(new long[]{start, end});
+                periodStart = end - end % HEARTBEAT_INTERVAL;
+            }
+        }
+        return stalls;
+    }
+
+    /**
+     * The simulated process, which replies to the requests unless it is stalled or crashed
+     */
+    private static final class Host {
+
+        private final List<long[]> stalls;
+        private final long crashAt;
+        private final Random random;
+
+        private Host(final List<long[]> stalls, final long crashAt, final Random random) {
+            this.stalls = stalls;
+            this.crashAt = crashAt;
+            this.random = random;
+        }
+
+        /**
+         * @param sentAt:  the moment at which the request is sent
+         * @param replies: the moments at which the replies arrive, to which the reply is added (if there is one)
+         */
+        private void request(final long sentAt, final PriorityQueue<Long> replies) {
+            var repliedAt = sentAt + MIN_LATENCY + random.nextInt(MAX_LATENCY - MIN_LATENCY + 1);
+            for (final var stall : stalls) {
+                if (stall[0] <= repliedAt && repliedAt < stall[1]) {
+                    repliedAt = stall[1] + random.nextInt(MAX_LATENCY);
+                }
+            }
+            if (repliedAt < crashAt) {
+                replies.add(repliedAt);
+            }
+        }
+    }
+
+    /**
+     * The totals of the runs of a detector
+     */
+    private static final class Result {
+
+        private long falseSuspicions;
+        private long detectionsCount;
+        private long detectionMillis;
+        private long finalDelay;
+
+        /**
+         * Count the suspicion as false if the process did not crash yet, or add the time since the crash otherwise (a
+         * process stays suspected once it crashed, so it is suspected at most once after the crash)
+         */
+        private void onSuspicion(final long now, final long crashAt) {
+            if (now < crashAt) {
+                ++falseSuspicions;
+            } else {
+                ++detectionsCount;
+                detectionMillis += now - crashAt;
+            }
+        }
+
+        private double getAverageDetectionMillis() {
+            return detectionsCount == 0 ? 0 : detectionMillis / (double) detectionsCount;
+        }
+    }
+}
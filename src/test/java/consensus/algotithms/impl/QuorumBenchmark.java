@@ -0,0 +1,205 @@
+package consensus.algotithms.impl;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import consensus.Paxos;
+import utils.processes.ProcessRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long the leader of an epoch takes to collect one round of replies (a STATE and an ACCEPT from every
+ * process), for 3, 9, 33 and 101 processes
+ *
+ * Every size is measured twice: with the states kept into a map by the whole process id and the accepts counted by a
+ * plain counter (as EpochConsensusAbstraction did before), and with the states kept into an array and the accepts into
+ * a bitset, both by the index of the sender into the process registry (as it does now)
+ * Every reply comes with its own sender id, parsed from its bytes as the node does, so the map pays for hashing and
+ * comparing new ids (with new strings), and the registry pays for looking the sender up
+ * The ids are parsed in batches before the time is taken, so the parsing is not measured
+ * The STATE and the ACCEPT replies are timed apart, because before the accepts were counted without looking the sender
+ * up at all (so a duplicate ACCEPT was counted twice)
+ *
+ * Run it with: gradle benchmark -Pharness=consensus.algotithms.impl.QuorumBenchmark -PharnessArgs="[replies]"
+ */
+public class QuorumBenchmark {
+
+    private static final int ROUNDS = 7;
+    private static final int BATCH_REPLIES = 1 << 16;
+
+    //keeps the jit from removing the measured code
+    private static long quorumsCount;
+
+    public static void main(final String[] args) throws InvalidProtocolBufferException {
+        final var repliesCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        //warm up the jit on both paths, so that the first size is not measured while compiling
+        measure(9, repliesCount, false);
+        measure(9, repliesCount, true);
+
+        System.out.println("processes   states: map   registry + array   accepts: counter   registry + bitset");
+        for (final var processesCount : new int[]{3, 9, 33, 101}) {
+            final var mapNanos = measure(processesCount, repliesCount, false);
+            final var indexNanos = measure(processesCount, repliesCount, true);
+            System.out.printf("%-11d %9.0f ns   %13.0f ns   %13.0f ns   %14.0f ns%n",
+                    processesCount, mapNanos[0], indexNanos[0], mapNanos[1], indexNanos[1]);
+        }
+        System.out.println("(the time of one round of replies of each kind, " + quorumsCount + " quorums)");
+    }
+
+    /**
+     * @param processesCount: the number of processes
+     * @param repliesCount:   about how many replies are collected in a round of measuring
+     * @param byIndex:        true for the registry and the bitset, false for the map and the counter
+     * @return the best time of one round of STATE replies, and of one round of ACCEPT replies, in nanoseconds
+     */
+    private static double[] measure(final int processesCount, final int repliesCount, final boolean byIndex)
+            throws InvalidProtocolBufferException {
+        final var processes = createProcesses(processesCount);
+        final var registry = new ProcessRegistry(processes);
+        final var state = Paxos.EpState_.newBuilder()
+                .setValueTimestamp(1)
+                .setValue(Paxos.Value.newBuilder().setDefined(true).setV(3))
+                .build();
+        final var quorum = byIndex ? new IndexQuorum(registry) : new MapQuorum(processesCount);
+
+        //a batch holds whole rounds of replies: the STATE of every process, and then the ACCEPT of every process
+        final var batchReplyRounds = Math.max(1, BATCH_REPLIES / (2 * processesCount));
+        final var batchesCount = Math.max(1, repliesCount / (2 * processesCount * batchReplyRounds));
+        final var senders = new Paxos.ProcessId[2 * processesCount * batchReplyRounds];
+
+        final var bestNanos = new double[]{Double.MAX_VALUE, Double.MAX_VALUE};
+        for (var round = 0; round < ROUNDS; ++round) {
+            var stateNanos = 0L;
+            var acceptNanos = 0L;
+            for (var batch = 0; batch < batchesCount; ++batch) {
+                for (var index = 0; index < senders.length; ++index) {
+                    senders[index] = Paxos.ProcessId.parseFrom(processes.get(index % processesCount).toByteString());
+                }
+
+                //the states of every round first, and then the accepts of every round
+                final var startedAt = System.nanoTime();
+                for (var index = 0; index < senders.length; index += 2 * processesCount) {
+                    for (var process = 0; process < processesCount; ++process) {
+                        quorum.onState(senders[index + process], state);
+                    }
+                }
+                final var statesDoneAt = System.nanoTime();
+                for (var index = processesCount; index < senders.length; index += 2 * processesCount) {
+                    for (var process = 0; process < processesCount; ++process) {
+                        quorum.onAccept(senders[index + process]);
+                    }
+                }
+                acceptNanos += System.nanoTime() - statesDoneAt;
+                stateNanos += statesDoneAt - startedAt;
+            }
+            final var replyRounds = (double) (batchesCount * batchReplyRounds);
+            bestNanos[0] = Math.min(bestNanos[0], stateNanos / replyRounds);
+            bestNanos[1] = Math.min(bestNanos[1], acceptNanos / replyRounds);
+        }
+        return bestNanos;
+    }
+
+    private static List<Paxos.ProcessId> createProcesses(final int processesCount) {
+        final var processes = new ArrayList<Paxos.ProcessId>();
+        for (var index = 0; index < processesCount; ++index) {
+            processes.add(Paxos.ProcessId.newBuilder()
+                    .setHost("127.0.0.1")
+                    .setPort(5001 + index)
+                    .setOwner("benchmark")
+                    .setIndex(index + 1)
+                    .setRank(index + 1)
+                    .build());
+        }
+        return processes;
+    }
+
+    private interface Quorum {
+
+        void onState(Paxos.ProcessId sender, Paxos.EpState_ state);
+
+        void onAccept(Paxos.ProcessId sender);
+    }
+
+    /**
+     * The states by the whole process id, and the accepts by a counter
+     */
+    private static final class MapQuorum implements Quorum {
+
+        private final int processesCount;
+        private final Map<Paxos.ProcessId, Paxos.EpState_> states = new HashMap<>();
+        private int accepted;
+
+        private MapQuorum(final int processesCount) {
+            this.processesCount = processesCount;
+        }
+
+        @Override
+        public void onState(final Paxos.ProcessId sender, final Paxos.EpState_ state) {
+            states.put(sender, state);
+            if (states.size() > processesCount / 2) {
+                ++quorumsCount;
+                states.clear();
+            }
+        }
+
+        @Override
+        public void onAccept(final Paxos.ProcessId sender) {
+            ++accepted;
+            if (accepted > processesCount / 2) {
+                ++quorumsCount;
+                accepted = 0;
+            }
+        }
+    }
+
+    /**
+     * The states into an array, and the accepts into a bitset, both by the index of the sender
+     */
+    private static final class IndexQuorum implements Quorum {
+
+        private final ProcessRegistry registry;
+        private final Paxos.EpState_[] states;
+        private final BitSet accepted;
+        private int statesCount;
+        private int acceptedCount;
+
+        private IndexQuorum(final ProcessRegistry registry) {
+            this.registry = registry;
+            this.states = new Paxos.EpState_[registry.size()];
+            this.accepted = new BitSet(registry.size());
+        }
+
+        @Override
+        public void onState(final Paxos.ProcessId sender, final Paxos.EpState_ state) {
+            final var senderIndex = registry.indexOf(sender);
+            if (states[senderIndex] == null) {
+                ++statesCount;
+            }
+            states[senderIndex] = state;
+            if (statesCount > states.length / 2) {
+                ++quorumsCount;
+                Arrays.fill(states, null);
+                statesCount = 0;
+            }
+        }
+
+        @Override
+        public void onAccept(final Paxos.ProcessId sender) {
+            final var senderIndex = registry.indexOf(sender);
+            if (!accepted.get(senderIndex)) {
+                accepted.set(senderIndex);
+                ++acceptedCount;
+            }
+            if (acceptedCount > states.length / 2) {
+                ++quorumsCount;
+                accepted.clear();
+                acceptedCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package consensus.module.impl;
+
+import consensus.Paxos;
+import org.junit.Before;
+import org.junit.Test;
+import utils.messages.InboundMessage;
+import utils.messages.MessageLane;
+import utils.messages.MessagesHelper;
+import utils.metrics.StageMetrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MailboxTest {
+
+    private static final Paxos.ProcessId PROCESS = Paxos.ProcessId.newBuilder()
+            .setHost("127.0.0.1")
+            .setPort(5004)
+            .setOwner("test")
+            .setIndex(1)
+            .setRank(1)
+            .build();
+
+    private StageMetrics receivedMetrics;
+    private Map<MessageLane, StageMetrics> laneMetrics;
+    private Mailbox mailbox;
+
+    @Before
+    public void createMailbox() {
+        receivedMetrics = new StageMetrics("received", () -> 0);
+        laneMetrics = new EnumMap<>(MessageLane.class);
+        for (final var lane : MessageLane.values()) {
+            laneMetrics.put(lane, new StageMetrics(lane.name(), () -> 0));
+        }
+        mailbox = new Mailbox(receivedMetrics, laneMetrics);
+    }
+
+    @Test
+    public void controlMessagesOvertakeTheOtherLanes() throws Exception {
+        final var bulk = MessagesHelper.createEpStateMessage("ep1", 0, PROCESS, Paxos.Value.getDefaultInstance());
+        final var protocol = proposeOf(1);
+        final var heartbeat = receivedOf(Paxos.Message.Type.EPFD_HEARTBEAT_REPLY);
+        final var timeout = MessagesHelper.createEpfdTimeout();
+
+        //the failure detector messages come last, behind a backlog of the other lanes
+        mailbox.addTriggered(bulk);
+        mailbox.addTriggered(protocol);
+        mailbox.addReceived(heartbeat);
+        mailbox.addTriggered(timeout);
+
+        assertSame(timeout, mailbox.poll(0));
+        assertEquals(heartbeat.getMessage(), mailbox.poll(1));
+        assertSame(protocol, mailbox.poll(2));
+        assertSame(bulk, mailbox.poll(3));
+        assertNull(mailbox.poll(4));
+        assertTrue(mailbox.isEmpty());
+
+        //the wait of every message is recorded in its lane, and the wait of the received ones also apart
+        assertEquals(2, laneMetrics.get(MessageLane.CONTROL).getWaitMicros().getCount());
+        assertEquals(1, laneMetrics.get(MessageLane.PROTOCOL).getWaitMicros().getCount());
+        assertEquals(1, laneMetrics.get(MessageLane.BULK).getWaitMicros().getCount());
+        assertEquals(1, receivedMetrics.getWaitMicros().getCount());
+    }
+
+    @Test
+    public void bulkLaneIsNotStarved() {
+        final var bulk = new Paxos.Message[2];
+        for (var index = 0; index < bulk.length; ++index) {
+            bulk[index] = MessagesHelper.createEpStateMessage("ep1", index, PROCESS, Paxos.Value.getDefaultInstance());
+            mailbox.addTriggered(bulk[index]);
+        }
+        final var protocol = new Paxos.Message[6];
+        for (var index = 0; index < protocol.length; ++index) {
+            protocol[index] = proposeOf(index);
+            mailbox.addTriggered(protocol[index]);
+        }
+        assertEquals(2, mailbox.getCount(MessageLane.BULK));
+        assertEquals(6, mailbox.getCount(MessageLane.PROTOCOL));
+
+        //one message in every four is taken from the bulk lane
+        final var expected = new Paxos.Message[]{
+                protocol[0], protocol[1], protocol[2], bulk[0],
+                protocol[3], protocol[4], protocol[5], bulk[1]};
+        for (var index = 0; index < expected.length; ++index) {
+            assertSame("message " + index, expected[index], mailbox.poll(index));
+        }
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    public void triggeredAndReceivedMessagesTakeTurnsInALane() throws Exception {
+        final var firstTriggered = proposeOf(1);
+        final var secondTriggered = proposeOf(2);
+        final var firstReceived = receivedOf(Paxos.Message.Type.EP_READ_);
+        final var secondReceived = receivedOf(Paxos.Message.Type.EP_ACCEPT_);
+
+        mailbox.addTriggered(firstTriggered);
+        mailbox.addTriggered(secondTriggered);
+        mailbox.addReceived(firstReceived);
+        mailbox.addReceived(secondReceived);
+        assertEquals(2, mailbox.getReceivedCount());
+
+        assertSame(firstTriggered, mailbox.poll(0));
+        assertEquals(firstReceived.getMessage(), mailbox.poll(1));
+        assertSame(secondTriggered, mailbox.poll(2));
+        assertEquals(secondReceived.getMessage(), mailbox.poll(3));
+        assertTrue(mailbox.isEmpty());
+    }
+
+    private static Paxos.Message proposeOf(final int value) {
+        return Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_PROPOSE)
+                .setEpPropose(Paxos.EpPropose.newBuilder()
+                        .setValue(Paxos.Value.newBuilder().setDefined(true).setV(value)))
+                .build();
+    }
+
+    private static InboundMessage receivedOf(final Paxos.Message.Type innerType) {
+        return InboundMessage.of(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.NETWORK_MESSAGE)
+                .setSystemId("sys-1")
+                .setNetworkMessage(Paxos.NetworkMessage.newBuilder()
+                        .setSenderHost("127.0.0.1")
+                        .setSenderListeningPort(5005)
+                        .setMessage(Paxos.Message.newBuilder().setType(innerType)))
+                .build());
+    }
+}
@@ -0,0 +1,186 @@
+package consensus.module.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MILLIS = 1;
+
+    //the timers may run late on a busy machine, so only the lower bounds are strict
+    private static final long LATENESS_MILLIS = 2000;
+
+    private TimerWheel timerWheel;
+
+    @Before
+    public void startWheel() {
+        timerWheel = new TimerWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, task -> {
+            final var thread = new Thread(task, "timer-wheel-test");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timerWheel.start();
+    }
+
+    @After
+    public void stopWheel() {
+        timerWheel.stop();
+    }
+
+    @Test
+    public void timersNeverRunEarly() throws InterruptedException {
+        final var delays = new long[]{0, 1, 2, 3, 5, 8, 13, 21, 34, 55, 89};
+        final var latch = new CountDownLatch(delays.length);
+        final var earlyTimers = new ArrayList<Long>();
+
+        for (final var delay : delays) {
+            final var scheduledAt = System.nanoTime();
+            timerWheel.schedule(() -> {
+                if (System.nanoTime() - scheduledAt < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    synchronized (earlyTimers) {
+                        earlyTimers.add(delay);
+                    }
+                }
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(LATENESS_MILLIS + 89, TimeUnit.MILLISECONDS));
+        synchronized (earlyTimers) {
+            assertTrue("early timers " + earlyTimers, earlyTimers.isEmpty());
+        }
+    }
+
+    @Test
+    public void timersCascadeAcrossTheFirstLevel() throws InterruptedException {
+        //the first level holds 256 ticks, so these timers are put into the second level and moved down later
+        final var delays = new long[]{255, 256, 257, 300, 600};
+        final var latch = new CountDownLatch(delays.length);
+        final var lateness = new AtomicLong(Long.MAX_VALUE);
+
+        for (final var delay : delays) {
+            final var scheduledAt = System.nanoTime();
+            timerWheel.schedule(() -> {
+                final var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduledAt);
+                lateness.accumulateAndGet(elapsedMillis - delay, Math::min);
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(LATENESS_MILLIS + 600, TimeUnit.MILLISECONDS));
+        assertTrue("a timer ran " + -lateness.get() + " ms early", lateness.get() >= 0);
+    }
+
+    @Test
+    public void cancelBeforeExpiry() throws InterruptedException {
+        final var runs = new AtomicInteger();
+        final var timer = timerWheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(timer.cancel());
+        assertFalse(timer.isPending());
+        assertFalse(timer.cancel());
+
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void cancelAfterExpiry() throws InterruptedException {
+        final var latch = new CountDownLatch(1);
+        final var timer = timerWheel.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(timer.isPending());
+        assertFalse(timer.cancel());
+    }
+
+    @Test
+    public void rescheduleMovesAPendingTimer() throws InterruptedException {
+        final var ranAt = new AtomicLong();
+        final var latch = new CountDownLatch(1);
+        final var scheduledAt = System.nanoTime();
+        final var timer = timerWheel.schedule(() -> {
+            ranAt.set(System.nanoTime());
+            latch.countDown();
+        }, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(timer.reschedule(100, TimeUnit.MILLISECONDS));
+        assertTrue(latch.await(LATENESS_MILLIS + 100, TimeUnit.MILLISECONDS));
+        assertTrue(ranAt.get() - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void rescheduleRunsAnExpiredTimerAgain() throws InterruptedException {
+        final var runs = new AtomicInteger();
+        final var firstRun = new CountDownLatch(1);
+        final var secondRun = new CountDownLatch(2);
+        final var timer = timerWheel.schedule(() -> {
+            runs.incrementAndGet();
+            firstRun.countDown();
+            secondRun.countDown();
+        }, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(firstRun.await(LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(timer.isPending());
+
+        assertFalse(timer.reschedule(5, TimeUnit.MILLISECONDS));
+        assertTrue(timer.isPending());
+        assertTrue(secondRun.await(LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        Thread.sleep(50);
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void longDelaysAreClampedAndDoNotBreakTheWheel() throws InterruptedException {
+        //the delay is far beyond the 2^32 ticks that the wheel reaches, and its nanoseconds overflow a long
+        final var runs = new AtomicInteger();
+        final var longTimer = timerWheel.schedule(runs::incrementAndGet, Long.MAX_VALUE, TimeUnit.DAYS);
+
+        //the other timers still run, and a negative delay runs right away
+        final var latch = new CountDownLatch(2);
+        timerWheel.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(latch::countDown, -10, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(LATENESS_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(longTimer.isPending());
+        assertEquals(0, runs.get());
+        assertTrue(longTimer.cancel());
+    }
+
+    @Test
+    public void manyPendingTimersRunOnceAndTheCanceledOnesNever() throws InterruptedException {
+        //a node holds the timeouts of all its systems, so the timers are spread over the first two levels
+        final var timersCount = 200_000;
+        final var runs = new AtomicInteger();
+        final var canceledRuns = new AtomicInteger();
+        final var latch = new CountDownLatch(timersCount / 2);
+
+        for (var index = 0; index < timersCount; ++index) {
+            final var delay = index % 500;
+            if (index % 2 == 0) {
+                timerWheel.schedule(() -> {
+                    runs.incrementAndGet();
+                    latch.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                timerWheel.schedule(canceledRuns::incrementAndGet, delay + 100, TimeUnit.MILLISECONDS).cancel();
+            }
+        }
+
+        assertTrue(latch.await(LATENESS_MILLIS + 500, TimeUnit.MILLISECONDS));
+        Thread.sleep(700);
+        assertEquals(timersCount / 2, runs.get());
+        assertEquals(0, canceledRuns.get());
+    }
+}
@@ -0,0 +1,98 @@
+package consensus.node.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFilterTest {
+
+    private static final int SENDER_PORT = 5004;
+
+    //a table is rotated once it holds half of its 8192 slots
+    private static final int WINDOW_ENTRIES = 4096;
+
+    @Test
+    public void detectsTheSecondCopy() {
+        final var filter = new DuplicateFilter();
+
+        assertFalse(filter.isDuplicate(SENDER_PORT, "a"));
+        assertTrue(filter.isDuplicate(SENDER_PORT, "a"));
+        assertEquals(1, filter.getHitsCount());
+        assertEquals(1, filter.getMissesCount());
+    }
+
+    @Test
+    public void distinguishesTheSenders() {
+        final var filter = new DuplicateFilter();
+
+        assertFalse(filter.isDuplicate(SENDER_PORT, "a"));
+        assertFalse(filter.isDuplicate(SENDER_PORT + 1, "a"));
+    }
+
+    @Test
+    public void detectsDuplicatesAcrossARotation() {
+        final var filter = new DuplicateFilter();
+        assertFalse(filter.isDuplicate(SENDER_PORT, "first"));
+
+        //fill the current table, and rotate it (the first id moves into the previous table)
+        receiveDistinctIds(filter, "rotation-", WINDOW_ENTRIES);
+
+        assertTrue(filter.isDuplicate(SENDER_PORT, "first"));
+    }
+
+    @Test
+    public void forgetsAfterTwoWindows() {
+        final var filter = new DuplicateFilter();
+        assertFalse(filter.isDuplicate(SENDER_PORT, "first"));
+
+        //the first rotation keeps the first id into the previous table, and the second one clears it
+        receiveDistinctIds(filter, "rotation-", 2 * WINDOW_ENTRIES);
+
+        assertFalse(filter.isDuplicate(SENDER_PORT, "first"));
+    }
+
+    @Test
+    public void keepsTheIdsWhoseSlotsCollide() {
+        //find two ids that start from the same slot, but have different fingerprints
+        final var first = "collision-0";
+        final var firstFingerprint = DuplicateFilter.fingerprint(SENDER_PORT, first);
+        var second = "";
+        for (var index = 1; second.isEmpty(); ++index) {
+            final var candidate = "collision-" + index;
+            final var fingerprint = DuplicateFilter.fingerprint(SENDER_PORT, candidate);
+            if (DuplicateFilter.slotOf(fingerprint) == DuplicateFilter.slotOf(firstFingerprint)) {
+                assertNotEquals(firstFingerprint, fingerprint);
+                second = candidate;
+            }
+        }
+
+        final var filter = new DuplicateFilter();
+        assertFalse(filter.isDuplicate(SENDER_PORT, first));
+        assertFalse(filter.isDuplicate(SENDER_PORT, second));
+        assertTrue(filter.isDuplicate(SENDER_PORT, first));
+        assertTrue(filter.isDuplicate(SENDER_PORT, second));
+    }
+
+    @Test
+    public void fullWindowHasNoFalseDuplicates() {
+        final var filter = new DuplicateFilter();
+
+        //so many ids collide on their slots, and all of them should still be told apart
+        receiveDistinctIds(filter, "id-", WINDOW_ENTRIES);
+        for (var index = 0; index < WINDOW_ENTRIES; ++index) {
+            assertTrue(filter.isDuplicate(SENDER_PORT, "id-" + index));
+        }
+    }
+
+    /**
+     * Receive the given number of new ids, none of which is a duplicate
+     */
+    private static void receiveDistinctIds(final DuplicateFilter filter, final String prefix, final int count) {
+        for (var index = 0; index < count; ++index) {
+            assertFalse(filter.isDuplicate(SENDER_PORT, prefix + index));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package consensus.node.impl;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameDecoderTest {
+
+    @Test
+    public void readsSeveralFramesAtOnce() throws IOException {
+        final var first = bytesOf(10, 1);
+        final var second = bytesOf(20, 2);
+        final var frames = new ArrayList<byte[]>();
+
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            assertTrue(decoder.read(new ChunkedChannel(concat(frameOf(first), frameOf(second)))));
+        }
+
+        assertFrames(frames, first, second);
+    }
+
+    @Test
+    public void readsAFrameSplitAcrossReads() throws IOException {
+        final var message = bytesOf(100, 3);
+        final var frame = frameOf(message);
+        final var frames = new ArrayList<byte[]>();
+
+        //the length and the message arrive one byte at a time
+        final var channel = new ChunkedChannel(splitInto(frame, 1));
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            for (var read = 0; read < frame.length - 1; ++read) {
+                assertTrue(decoder.read(channel));
+                assertTrue(frames.isEmpty());
+            }
+            assertTrue(decoder.read(channel));
+        }
+
+        assertFrames(frames, message);
+    }
+
+    @Test
+    public void keepsThePartialFrameAfterTheCompleteOnes() throws IOException {
+        final var first = bytesOf(10, 4);
+        final var second = bytesOf(30, 5);
+        final var stream = concat(frameOf(first), frameOf(second));
+        final var frames = new ArrayList<byte[]>();
+
+        //the first read ends in the middle of the second frame, after a part of its length
+        final var splitAt = Integer.BYTES + first.length + 2;
+        final var channel = new ChunkedChannel(
+                Arrays.copyOfRange(stream, 0, splitAt),
+                Arrays.copyOfRange(stream, splitAt, stream.length));
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            assertTrue(decoder.read(channel));
+            assertFrames(frames, first);
+            assertTrue(decoder.read(channel));
+        }
+
+        assertFrames(frames, first, second);
+    }
+
+    @Test
+    public void readsAFrameLargerThanThePooledBuffer() throws IOException {
+        final var large = bytesOf(100_000, 6);
+        final var small = bytesOf(10, 7);
+        final var frames = new ArrayList<byte[]>();
+
+        //the large frame arrives in parts, and the small frame after it goes back into the pooled buffer
+        final var channel = new ChunkedChannel(splitInto(concat(frameOf(large), frameOf(small)), 7000));
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            while (channel.hasChunks()) {
+                assertTrue(decoder.read(channel));
+            }
+        }
+
+        assertFrames(frames, large, small);
+    }
+
+    @Test
+    public void handsOverTheReadBufferAroundEveryFrame() throws IOException {
+        final var first = bytesOf(10, 8);
+        final var second = bytesOf(20, 9);
+        final var buffers = new ArrayList<ByteBuffer>();
+        final var frames = new ArrayList<byte[]>();
+        final var copyFrame = bytesInto(frames);
+
+        try (var decoder = new FrameDecoder(frame -> {
+            buffers.add(frame);
+            copyFrame.accept(frame);
+            //a handler that moves the position does not break the next frames
+            frame.position(frame.limit());
+        })) {
+            assertTrue(decoder.read(new ChunkedChannel(concat(frameOf(first), frameOf(second)))));
+        }
+
+        //both frames are views of the same pooled direct buffer, so nothing was copied
+        assertEquals(2, buffers.size());
+        assertSame(buffers.get(0), buffers.get(1));
+        assertTrue(buffers.get(0).isDirect());
+        assertFrames(frames, first, second);
+    }
+
+    @Test
+    public void stopsOnAnInvalidLength() throws IOException {
+        final var frames = new ArrayList<byte[]>();
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            assertFalse(decoder.read(new ChunkedChannel(ByteBuffer.allocate(Integer.BYTES).putInt(0).array())));
+        }
+        try (var decoder = new FrameDecoder(bytesInto(frames))) {
+            final var tooLarge = ByteBuffer.allocate(Integer.BYTES).putInt(FrameDecoder.MAX_FRAME_SIZE + 1).array();
+            assertFalse(decoder.read(new ChunkedChannel(tooLarge)));
+        }
+        assertTrue(frames.isEmpty());
+    }
+
+    @Test
+    public void stopsAtTheEndOfTheStream() throws IOException {
+        try (var decoder = new FrameDecoder(frame -> {
+        })) {
+            assertFalse(decoder.read(new ChunkedChannel()));
+        }
+    }
+
+    /**
+     * @return a frame handler that copies the bytes of every frame into the list (the buffer is reused after the call)
+     */
+    private static Consumer<ByteBuffer> bytesInto(final List<byte[]> frames) {
+        return frame -> {
+            final var bytes = new byte[frame.remaining()];
+            frame.get(frame.position(), bytes);
+            frames.add(bytes);
+        };
+    }
+
+    private static void assertFrames(final List<byte[]> frames, final byte[]... expected) {
+        assertEquals(expected.length, frames.size());
+        for (var index = 0; index < expected.length; ++index) {
+            assertArrayEquals(expected[index], frames.get(index));
+        }
+    }
+
+    private static byte[] bytesOf(final int length, final int seed) {
+        final var bytes = new byte[length];
+        for (var index = 0; index < length; ++index) {
+            bytes[index] = (byte) (index * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static byte[] frameOf(final byte[] message) {
+        return ByteBuffer.allocate(Integer.BYTES + message.length).putInt(message.length).put(message).array();
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final var bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static byte[][] splitInto(final byte[] bytes, final int chunkSize) {
+        final var chunks = new byte[(bytes.length + chunkSize - 1) / chunkSize][];
+        for (var chunk = 0; chunk < chunks.length; ++chunk) {
+            chunks[chunk] = Arrays.copyOfRange(bytes, chunk * chunkSize, Math.min(bytes.length, (chunk + 1) * chunkSize));
+        }
+        return chunks;
+    }
+
+    /**
+     * A channel that returns at most one chunk per read, and the end of the stream after the last chunk
+     */
+    private static final class ChunkedChannel implements ReadableByteChannel {
+
+        private final Queue<ByteBuffer> chunks = new ArrayDeque<>();
+
+        private ChunkedChannel(final byte[]... chunks) {
+            for (final var chunk : chunks) {
+                this.chunks.add(ByteBuffer.wrap(chunk));
+            }
+        }
+
+        private boolean hasChunks() {
+            return !chunks.isEmpty();
+        }
+
+        @Override
+        public int read(final ByteBuffer destination) {
+            final var chunk = chunks.peek();
+            if (chunk == null) {
+                return -1;
+            }
+
+            final var length = Math.min(chunk.remaining(), destination.remaining());
+            destination.put(destination.position(), chunk, chunk.position(), length);
+            destination.position(destination.position() + length);
+            chunk.position(chunk.position() + length);
+            if (!chunk.hasRemaining()) {
+                chunks.poll();
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
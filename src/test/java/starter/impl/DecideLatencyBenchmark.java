@@ -0,0 +1,169 @@
+package starter.impl;
+
+import consensus.Paxos;
+import utils.constants.impl.ConstantsManager;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the nodes take to decide, from the AppPropose messages sent by the hub until the hub received the
+ * AppDecide of every node
+ * The benchmark plays the hub: it listens on the hub port of constants.json, starts the nodes of constants.json in this
+ * process (as Main does), waits for their registrations, and then runs one system after the other
+ * Only the public starter and the wire format are used, so the same file runs against the older trees too
+ *
+ * Run it with: gradle benchmark -Pharness=starter.impl.DecideLatencyBenchmark -PharnessArgs="[runs] [warmup runs]"
+ */
+public class DecideLatencyBenchmark {
+
+    private static final long DECIDE_TIMEOUT_SECONDS = 20;
+
+    public static void main(final String[] args) throws Exception {
+        final var runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final var warmupRuns = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        final var constantsManager = new ConstantsManager();
+        final String hubIp = (String) constantsManager.getConstantValue("hubIp").orElseGet(() -> null);
+        final int hubPort = (Integer) constantsManager.getConstantValue("hubPort").orElseGet(() -> 0);
+        final int nodeNr = (Integer) constantsManager.getConstantValue("nodeNr").orElseGet(() -> 0);
+
+        //the messages sent by the nodes to the hub
+        final var receivedMessages = new LinkedBlockingQueue<Paxos.Message>();
+        final var serverSocket = new ServerSocket(hubPort);
+        final var acceptor = new Thread(() -> acceptMessages(serverSocket, receivedMessages), "benchmark-hub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        //start the nodes, and wait for them to register
+        new ProgramStarter(constantsManager).start();
+        final var processes = new ArrayList<Paxos.ProcessId>();
+        for (var registered = 0; registered < nodeNr; ++registered) {
+            final var networkMessage = take(receivedMessages).getNetworkMessage();
+            final var registration = networkMessage.getMessage().getAppRegistration();
+            processes.add(Paxos.ProcessId.newBuilder()
+                    .setHost(hubIp)
+                    .setPort(networkMessage.getSenderListeningPort())
+                    .setOwner(registration.getOwner())
+                    .setIndex(registration.getIndex())
+                    .setRank(registration.getIndex())
+                    .build());
+        }
+
+        //the first systems also load the classes and warm up the jit, so they are not measured
+        final var latencies = new long[runs];
+        for (var run = 0; run < warmupRuns + runs; ++run) {
+            final var latency = decide("benchmark-" + run, processes, hubIp, hubPort, receivedMessages);
+            if (run >= warmupRuns) {
+                latencies[run - warmupRuns] = latency;
+            }
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%d nodes, %d runs: avg %.1f ms, median %.1f ms, max %.1f ms%n",
+                nodeNr, runs,
+                Arrays.stream(latencies).average().orElse(0) / 1e6,
+                latencies[runs / 2] / 1e6,
+                latencies[runs - 1] / 1e6);
+        System.exit(0);
+    }
+
+    /**
+     * Propose a different value to every process, and wait until all of them decided the same value
+     *
+     * @return the time from the first proposal until the last decision, in nanoseconds
+     */
+    private static long decide(final String systemId, final List<Paxos.ProcessId> processes,
+                               final String hubIp, final int hubPort,
+                               final BlockingQueue<Paxos.Message> receivedMessages) throws Exception {
+        final var startedAt = System.nanoTime();
+        for (final var process : processes) {
+            final var propose = Paxos.Message.newBuilder()
+                    .setType(Paxos.Message.Type.APP_PROPOSE)
+                    .setAppPropose(Paxos.AppPropose.newBuilder()
+                            .setValue(Paxos.Value.newBuilder().setDefined(true).setV(process.getIndex()))
+                            .addAllProcesses(processes))
+                    .build();
+            send(Paxos.Message.newBuilder()
+                    .setType(Paxos.Message.Type.NETWORK_MESSAGE)
+                    .setSystemId(systemId)
+                    .setNetworkMessage(Paxos.NetworkMessage.newBuilder()
+                            .setSenderHost(hubIp)
+                            .setSenderListeningPort(hubPort)
+                            .setMessage(propose))
+                    .build(), process);
+        }
+
+        final var decidedValues = new HashSet<Integer>();
+        for (var decided = 0; decided < processes.size(); ++decided) {
+            final var decide = take(receivedMessages).getNetworkMessage().getMessage();
+            if (!Paxos.Message.Type.APP_DECIDE.equals(decide.getType())) {
+                throw new IllegalStateException("expected an AppDecide of " + systemId + " but got " + decide);
+            }
+            decidedValues.add(decide.getAppDecide().getValue().getV());
+        }
+        final var latency = System.nanoTime() - startedAt;
+
+        if (decidedValues.size() != 1) {
+            throw new IllegalStateException(systemId + " decided different values " + decidedValues);
+        }
+        return latency;
+    }
+
+    private static Paxos.Message take(final BlockingQueue<Paxos.Message> receivedMessages) throws InterruptedException {
+        final var message = receivedMessages.poll(DECIDE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (message == null) {
+            throw new IllegalStateException("no message received in " + DECIDE_TIMEOUT_SECONDS + " s");
+        }
+        return message;
+    }
+
+    private static void send(final Paxos.Message message, final Paxos.ProcessId process) throws IOException {
+        final var bytes = message.toByteArray();
+        try (var socket = new Socket(process.getHost(), process.getPort())) {
+            socket.getOutputStream().write(ByteBuffer.allocate(Integer.BYTES + bytes.length)
+                    .putInt(bytes.length)
+                    .put(bytes)
+                    .array());
+        }
+    }
+
+    /**
+     * Read every message sent to the hub (a message may come on a new connection, or on a connection that is kept)
+     */
+    private static void acceptMessages(final ServerSocket serverSocket, final BlockingQueue<Paxos.Message> receivedMessages) {
+        while (true) {
+            try {
+                final var socket = serverSocket.accept();
+                final var reader = new Thread(() -> readMessages(socket, receivedMessages), "benchmark-hub-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (final IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private static void readMessages(final Socket socket, final BlockingQueue<Paxos.Message> receivedMessages) {
+        try (socket; var input = new DataInputStream(socket.getInputStream())) {
+            while (true) {
+                final var bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+                receivedMessages.add(Paxos.Message.parseFrom(bytes));
+            }
+        } catch (final IOException e) {
+            //the node closed the connection
+        }
+    }
+}
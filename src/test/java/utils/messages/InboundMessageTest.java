@@ -0,0 +1,192 @@
+package utils.messages;
+
+import com.google.protobuf.CodedOutputStream;
+import consensus.Paxos;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class InboundMessageTest {
+
+    @Test
+    public void parseHeaderReadsTheRoutingFields() throws IOException {
+        final var message = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_WRITE_)
+                .setAbstractionId("ep3")
+                .setEpWrite(Paxos.EpWrite_.newBuilder()
+                        .setValue(Paxos.Value.newBuilder().setDefined(true).setV(42)))
+                .build());
+
+        final var inboundMessage = InboundMessage.parseHeader(message.toByteArray());
+
+        assertEquals("uuid-1", inboundMessage.getMessageUuid());
+        assertEquals("sys-1", inboundMessage.getSystemId());
+        assertEquals("ep3", inboundMessage.getAbstractionId());
+        assertEquals(5004, inboundMessage.getSenderListeningPort());
+        assertEquals(Paxos.Message.Type.EP_WRITE_, inboundMessage.getInnerType());
+        assertEquals(message, inboundMessage.getMessage());
+    }
+
+    @Test
+    public void parseHeaderReadsTheTypeWrittenAfterTheOtherFields() throws IOException {
+        //protobuf writes the fields in the order of their numbers, but a parser should accept them in any order, so the
+        //messages are written by hand, with the type of the wrapped message after its other fields
+        final var innerBytes = concat(
+                Paxos.Message.newBuilder().setAbstractionId("epfd").setSystemId("sys-2").build().toByteArray(),
+                Paxos.Message.newBuilder().setType(Paxos.Message.Type.EPFD_HEARTBEAT_REPLY).build().toByteArray());
+        final var wrapperBytes = concat(
+                Paxos.NetworkMessage.newBuilder().setSenderListeningPort(5005).build().toByteArray(),
+                lengthDelimitedField(Paxos.NetworkMessage.MESSAGE_FIELD_NUMBER, innerBytes));
+        final var bytes = concat(
+                lengthDelimitedField(Paxos.Message.NETWORKMESSAGE_FIELD_NUMBER, wrapperBytes),
+                Paxos.Message.newBuilder().setType(Paxos.Message.Type.NETWORK_MESSAGE).setSystemId("sys-2").build().toByteArray());
+
+        final var inboundMessage = InboundMessage.parseHeader(bytes);
+
+        assertEquals("sys-2", inboundMessage.getSystemId());
+        assertEquals(5005, inboundMessage.getSenderListeningPort());
+        assertEquals(Paxos.Message.Type.EPFD_HEARTBEAT_REPLY, inboundMessage.getInnerType());
+    }
+
+    @Test
+    public void parseHeaderLeavesTheMissingFieldsEmpty() throws IOException {
+        final var message = Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.APP_PROPOSE)
+                .build();
+
+        final var inboundMessage = InboundMessage.parseHeader(message.toByteArray());
+
+        assertEquals("", inboundMessage.getMessageUuid());
+        assertEquals("", inboundMessage.getSystemId());
+        assertEquals("", inboundMessage.getAbstractionId());
+        assertEquals(0, inboundMessage.getSenderListeningPort());
+        assertEquals(Paxos.Message.Type.NETWORK_MESSAGE, inboundMessage.getInnerType());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseHeaderRejectsATruncatedMessage() throws IOException {
+        final var bytes = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_READ_)
+                .build()).toByteArray();
+
+        InboundMessage.parseHeader(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void parseHeaderReadsAFrameInTheMiddleOfADirectBuffer() throws IOException {
+        final var message = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_STATE_)
+                .setAbstractionId("ep7")
+                .setEpState(Paxos.EpState_.newBuilder()
+                        .setValueTimestamp(3)
+                        .setValue(Paxos.Value.newBuilder().setDefined(true).setV(9)))
+                .build());
+        final var frame = frameBetweenOtherBytes(ByteBuffer.allocateDirect(1024), message.toByteArray());
+        final var position = frame.position();
+        final var limit = frame.limit();
+
+        final var inboundMessage = InboundMessage.parseHeader(frame);
+        assertEquals("uuid-1", inboundMessage.getMessageUuid());
+        assertEquals("sys-1", inboundMessage.getSystemId());
+        assertEquals("ep7", inboundMessage.getAbstractionId());
+        assertEquals(5004, inboundMessage.getSenderListeningPort());
+        assertEquals(Paxos.Message.Type.EP_STATE_, inboundMessage.getInnerType());
+
+        //the message is parsed from the same slice, and the buffer is left as it was
+        inboundMessage.parseMessage(frame);
+        assertEquals(position, frame.position());
+        assertEquals(limit, frame.limit());
+
+        //the parsed message does not depend on the buffer, which is reused for the next frames
+        frame.clear();
+        while (frame.hasRemaining()) {
+            frame.put((byte) 0);
+        }
+        assertEquals(message, inboundMessage.getMessage());
+    }
+
+    @Test
+    public void parseHeaderReadsAFrameInTheMiddleOfAHeapBuffer() throws IOException {
+        final var message = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EPFD_HEARTBEAT_REQUEST)
+                .setAbstractionId("epfd")
+                .build());
+        final var frame = frameBetweenOtherBytes(ByteBuffer.allocate(1024), message.toByteArray());
+
+        final var inboundMessage = InboundMessage.parseHeader(frame);
+        inboundMessage.parseMessage(frame);
+
+        assertEquals("epfd", inboundMessage.getAbstractionId());
+        assertEquals(Paxos.Message.Type.EPFD_HEARTBEAT_REQUEST, inboundMessage.getInnerType());
+        assertEquals(message, inboundMessage.getMessage());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseHeaderRejectsAFrameCutByTheLimit() throws IOException {
+        final var bytes = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_READ_)
+                .build()).toByteArray();
+        final var frame = frameBetweenOtherBytes(ByteBuffer.allocateDirect(1024), bytes);
+
+        InboundMessage.parseHeader(frame.limit(frame.limit() - 1));
+    }
+
+    @Test
+    public void ofKeepsTheParsedMessage() throws IOException {
+        final var message = networkMessageOf(Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_DECIDED_)
+                .build());
+
+        final var inboundMessage = InboundMessage.of(message);
+
+        assertEquals("uuid-1", inboundMessage.getMessageUuid());
+        assertEquals(Paxos.Message.Type.EP_DECIDED_, inboundMessage.getInnerType());
+        assertEquals(message, inboundMessage.getMessage());
+    }
+
+    private static Paxos.Message networkMessageOf(final Paxos.Message innerMessage) {
+        return Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.NETWORK_MESSAGE)
+                .setMessageUuid("uuid-1")
+                .setSystemId("sys-1")
+                .setAbstractionId(innerMessage.getAbstractionId())
+                .setNetworkMessage(Paxos.NetworkMessage.newBuilder()
+                        .setSenderHost("127.0.0.1")
+                        .setSenderListeningPort(5004)
+                        .setMessage(innerMessage))
+                .build();
+    }
+
+    /**
+     * Write the message between other bytes, as it is found in a read buffer that holds several frames
+     *
+     * @return the buffer, with its position and limit set around the message
+     */
+    private static ByteBuffer frameBetweenOtherBytes(final ByteBuffer buffer, final byte[] message) {
+        final var otherBytes = new byte[17];
+        Arrays.fill(otherBytes, (byte) 0xFF);
+        buffer.put(otherBytes);
+        final var messageStart = buffer.position();
+        buffer.put(message).put(otherBytes);
+        return buffer.limit(messageStart + message.length).position(messageStart);
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final var bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    private static byte[] lengthDelimitedField(final int fieldNumber, final byte[] content) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        final var output = CodedOutputStream.newInstance(bytes);
+        output.writeByteArray(fieldNumber, content);
+        output.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package utils.messages;
+
+import consensus.Paxos;
+import org.junit.Test;
+
+import java.util.OptionalInt;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessagesHelperTest {
+
+    @Test
+    public void getEpochTimestamp_readsTheReferenceIds() {
+        //the reference processes tag the messages of the epoch consensus instances with ep0, ep1, ...
+        assertEquals(OptionalInt.of(0), MessagesHelper.getEpochTimestamp(messageOf("ep0")));
+        assertEquals(OptionalInt.of(1), MessagesHelper.getEpochTimestamp(messageOf("ep1")));
+        assertEquals(OptionalInt.of(12), MessagesHelper.getEpochTimestamp(messageOf("ep12")));
+    }
+
+    @Test
+    public void getEpochTimestamp_readsTheCreatedIds() {
+        final var abstractionId = MessagesHelper.createEpAbstractionId(Integer.MAX_VALUE);
+        assertEquals(OptionalInt.of(Integer.MAX_VALUE), MessagesHelper.getEpochTimestamp(messageOf(abstractionId)));
+    }
+
+    @Test
+    public void getEpochTimestamp_ignoresTheOtherAbstractions() {
+        for (final var abstractionId : new String[]{"", "app", "uc", "ec", "eld", "epfd", "beb", "pl"}) {
+            assertEquals(abstractionId, OptionalInt.empty(), MessagesHelper.getEpochTimestamp(messageOf(abstractionId)));
+        }
+    }
+
+    @Test
+    public void getEpochTimestamp_ignoresTheMalformedIds() {
+        //a prefix without digits, signs, suffixes, non ascii digits, and timestamps that do not fit into an int
+        for (final var abstractionId : new String[]{"ep", "ep-1", "ep+1", "ep1a", "ep 1", "ep\u0661", "ep2147483648"}) {
+            assertEquals(abstractionId, OptionalInt.empty(), MessagesHelper.getEpochTimestamp(messageOf(abstractionId)));
+        }
+    }
+
+    private static Paxos.Message messageOf(final String abstractionId) {
+        return Paxos.Message.newBuilder()
+                .setType(Paxos.Message.Type.EP_READ_)
+                .setAbstractionId(abstractionId)
+                .build();
+    }
+}
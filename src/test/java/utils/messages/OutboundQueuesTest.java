@@ -0,0 +1,111 @@
+package utils.messages;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundQueuesTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void controlFramesOvertakeTheQueuedFrames() throws InterruptedException {
+        final var writing = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var written = new ArrayList<OutboundFrame>();
+        final var allWritten = new CountDownLatch(7);
+
+        final var queues = new OutboundQueues(OutboundQueuesTest::daemonThread, (frames, address, port) -> {
+            //the first write blocks, as on a slow connection, so the next frames wait in the queues
+            writing.countDown();
+            await(release);
+            synchronized (written) {
+                written.addAll(frames);
+            }
+            frames.forEach(frame -> allWritten.countDown());
+            return frames.size();
+        });
+
+        final var first = frameOf(0);
+        queues.offer(first, MessageLane.PROTOCOL, "127.0.0.1", 5004);
+        assertTrue(writing.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        final var bulk = List.of(frameOf(1), frameOf(2));
+        final var protocol = List.of(frameOf(3), frameOf(4));
+        final var control = List.of(frameOf(5), frameOf(6));
+        offerAll(queues, bulk, MessageLane.BULK);
+        offerAll(queues, protocol, MessageLane.PROTOCOL);
+        offerAll(queues, control, MessageLane.CONTROL);
+        assertEquals(6, queues.getQueuedFramesCount());
+
+        release.countDown();
+        assertTrue(allWritten.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        //the lanes are taken by their priority, and the frames of a lane in the order in which they were queued
+        final var expected = List.of(first, control.get(0), control.get(1),
+                protocol.get(0), protocol.get(1), bulk.get(0), bulk.get(1));
+        synchronized (written) {
+            assertEquals(expected.size(), written.size());
+            for (var index = 0; index < expected.size(); ++index) {
+                assertSame("frame " + index, expected.get(index), written.get(index));
+            }
+        }
+
+        //the wait of every frame is recorded in its lane
+        assertEquals(2, queues.getWaitMicros(MessageLane.CONTROL).getCount());
+        assertEquals(3, queues.getWaitMicros(MessageLane.PROTOCOL).getCount());
+        assertEquals(2, queues.getWaitMicros(MessageLane.BULK).getCount());
+        assertEquals(0, queues.getDroppedFramesCount());
+    }
+
+    @Test
+    public void framesThatWereNotWrittenAreCountedAsDropped() throws InterruptedException {
+        final var attempted = new CountDownLatch(3);
+        final var queues = new OutboundQueues(OutboundQueuesTest::daemonThread, (frames, address, port) -> {
+            frames.forEach(frame -> attempted.countDown());
+            return 0;
+        });
+
+        queues.offer(frameOf(0), MessageLane.CONTROL, "127.0.0.1", 5005);
+        queues.offer(frameOf(1), MessageLane.PROTOCOL, "127.0.0.1", 5005);
+        queues.offer(frameOf(2), MessageLane.BULK, "127.0.0.1", 5005);
+        assertTrue(attempted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        //the count is updated right after the write returns
+        final var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (queues.getDroppedFramesCount() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(3, queues.getDroppedFramesCount());
+    }
+
+    private static void offerAll(final OutboundQueues queues, final List<OutboundFrame> frames, final MessageLane lane) {
+        frames.forEach(frame -> queues.offer(frame, lane, "127.0.0.1", 5004));
+    }
+
+    private static OutboundFrame frameOf(final int id) {
+        return new OutboundFrame(new byte[]{(byte) id}, ByteString.EMPTY);
+    }
+
+    private static Thread daemonThread(final Runnable task) {
+        final var thread = new Thread(task, "outbound-queues-test");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}